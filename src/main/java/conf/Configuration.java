@@ -36,6 +36,78 @@ public class Configuration {
     public static final String FILENAME_DATA_PREFIX = "data_";
     public static final String FILENAME_DATA_SUFFIX = ".dat";
     public static final String FILENAME_INDEX_SUFFIX = ".idx";
+    /*
+     * Format of the new records, 1 for the Base64 text envelope, 2 for the binary envelope or 3 for the binary
+     * envelope with compressed data. All of them can be read.
+     */
+    public static final Integer RECORD_FORMAT_VERSION = 2;
+    /*
+     * Compression of the version 3 records, 0 for none, 1 for deflate or 2 for the fast LZ codec (see
+     * io.CompressionCodecs). Records smaller than the minimum size, or which compress less than an eighth, are
+     * stored uncompressed. The compression is off unless both the format version and the codec are set.
+     */
+    public static final Integer RECORD_COMPRESSION = 0;
+    public static final Integer RECORD_DEFLATE_LEVEL = 6;
+    public static final Integer RECORD_COMPRESSION_MIN_SIZE = 128;
+    /*
+     * When enabled, new data files start with a header block holding a compression dictionary, trained from a sample
+     * of the first records of the file (see io.FileDataDictionary). The records after it are compressed with deflate
+     * against the dictionary, from a smaller minimum size. It is off by default, as the record compression.
+     */
+    public static final Boolean RECORD_DICTIONARY = false;
+    public static final Integer RECORD_DICTIONARY_SAMPLE_SIZE = 65536;
+    public static final Integer RECORD_DICTIONARY_MIN_SIZE = 32;
+    /*
+     * Data blocks kept in memory by the block cache (see io.BlockCache), off the heap. 0 disables the cache.
+     */
+    public static final Integer BLOCK_CACHE_BLOCKS = 4096;
+    /*
+     * Codec of the new documents, 0 for Java serialization or 1 for the binary codec (see data.DocumentCodecs)
+     */
+    public static final Integer DOCUMENT_CODEC = 1;
+    /*
+     * Files are mapped in segments, as a single mapping cannot be bigger than 2G. Consecutive segments
+     * overlap, so any line shorter than the overlap can be read from a single segment.
+     */
+    public static final Long MMAP_SEGMENT_SIZE = 1073741824L;
+    public static final Integer MMAP_SEGMENT_OVERLAP = 16777216;
+    /*
+     * The text searches share a single pool of threads. The file data is divided in chunks, which are
+     * picked up by the idle threads.
+     */
+    public static final Integer SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final Long SEARCH_CHUNK_SIZE = 4194304L;
+    /*
+     * Trigram index sidecar files. The indexed file is divided in blocks of lines of about this size.
+     */
+    public static final String FILENAME_TRIGRAM_INDEX_SUFFIX = ".tri";
+    public static final Long TRIGRAM_INDEX_BLOCK_SIZE = 1048576L;
+    /*
+     * Read backends which do not map the file read blocks of this size, from a pool of buffers
+     */
+    public static final Integer READ_BUFFER_SIZE = 1048576;
+    public static final Integer READ_BUFFER_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    /*
+     * Threads decompressing the members of compressed files, the decompressed data is scanned by the search threads
+     */
+    public static final Integer DECOMPRESS_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /*
+     * Mappings kept by the mapping cache, by number of files and by mapped bytes
+     */
+    public static final Integer MAPPING_CACHE_ENTRIES = 16;
+    public static final Long MAPPING_CACHE_BYTES = 34359738368L;
+    /*
+     * Line offset index sidecar files
+     */
+    public static final String FILENAME_LINE_INDEX_SUFFIX = ".lines";
+    /*
+     * Maximum number of matches waiting for the consumer in a streaming search
+     */
+    public static final Integer SEARCH_QUEUE_CAPACITY = 1024;
+    /*
+     * Milliseconds between the checks of a followed file
+     */
+    public static final Long FOLLOW_POLL_INTERVAL = 1000L;
     public static Map<String, ReadWriteLock> fileDataBlockLocks;
     public static Map<String, ReadWriteLock> fileIndexLocks;
 
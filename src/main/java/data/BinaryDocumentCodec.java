@@ -0,0 +1,190 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary document format, written by hand instead of using reflection:
+ *
+ * <pre>
+ *   flags (1) | id (zigzag varint) | name length (varint) | name (UTF-8) | content length (varint) | content (UTF-8)
+ * </pre>
+ *
+ * The flags tell which of the id, name and content are present (not null). The strings are encoded straight
+ * into the buffer, so encoding a document into a reused buffer does not allocate.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class BinaryDocumentCodec implements DocumentCodec {
+    public static final Integer ID = 1;
+    private static final int HAS_ID = 1;
+    private static final int HAS_NAME = 2;
+    private static final int HAS_CONTENT = 4;
+
+    @Override
+    public Integer getId() {
+        return ID;
+    }
+
+    @Override
+    public Integer getMaxEncodedSize(Document document) {
+        return 1 + 10 + 5 + 3 * length(document.getName()) + 5 + 3 * length(document.getContent());
+    }
+
+    @Override
+    public void encode(Document document, ByteBuffer buffer) throws IOException {
+        buffer.put((byte) ((document.getID() != null ? HAS_ID : 0) | (document.getName() != null ? HAS_NAME : 0) |
+                (document.getContent() != null ? HAS_CONTENT : 0)));
+        if(document.getID() != null) {
+            long id = document.getID();
+            putVarint(buffer, (id << 1) ^ (id >> 63));
+        }
+        if(document.getName() != null) {
+            putString(buffer, document.getName());
+        }
+        if(document.getContent() != null) {
+            putString(buffer, document.getContent());
+        }
+    }
+
+    @Override
+    public Document decode(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        try {
+            int flags = in.get();
+            Long id = null;
+            if((flags & HAS_ID) != 0) {
+                long zigzag = getVarint(in);
+                id = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            Document document = new Document(id, (flags & HAS_NAME) != 0 ? getString(in) : null);
+            if((flags & HAS_CONTENT) != 0) {
+                document.setContent(getString(in));
+            }
+            return document;
+        } catch (RuntimeException e) {
+            throw new IOException("invalid binary document", e);
+        }
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+
+    /**
+     * Writes the UTF-8 length and then the UTF-8 bytes of the string. An unpaired surrogate is written as '?',
+     * like String.getBytes does.
+     *
+     * @param buffer
+     * @param s
+     */
+    private static void putString(ByteBuffer buffer, String s) {
+        int length = s.length();
+        int bytes = length;
+        for(int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c >= 0x800) {
+                bytes += Character.isSurrogate(c) ? validPair(s, i) ? 2 : 0 : 2;
+            } else if(c >= 0x80) {
+                bytes++;
+            }
+        }
+        putVarint(buffer, bytes);
+
+        if(buffer.hasArray()) {
+            /*
+             * Writing straight into the array of a heap buffer
+             */
+            byte[] array = buffer.array();
+            int position = buffer.arrayOffset() + buffer.position();
+            int i = 0;
+            for(; i < length && s.charAt(i) < 0x80; i++) {
+                array[position++] = (byte) s.charAt(i);
+            }
+            if(i == length) {
+                buffer.position(buffer.position() + length);
+                return;
+            }
+        }
+        for(int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c < 0x80) {
+                buffer.put((byte) c);
+            } else if(c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if(!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if(validPair(s, i)) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                buffer.put((byte) '?');
+            }
+        }
+    }
+
+    /**
+     * Returns true if the character at i starts a valid surrogate pair. Both characters together take 4 bytes.
+     */
+    private static boolean validPair(String s, int i) {
+        return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length() &&
+                Character.isLowSurrogate(s.charAt(i + 1));
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = (int) getVarint(buffer);
+        String s;
+        if(buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+}
@@ -17,6 +17,7 @@
 package data;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
@@ -72,32 +73,29 @@ public class Document implements Serializable {
      * @throws IOException
      */
     public static Document deserialize(byte[] data) throws IOException {
-        Document document;
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        try {
-            document = Document.class.cast(ois.readObject());
-        } catch (ClassNotFoundException e) {
-            throw new IOException("index class format error");
-        } finally {
-            bais.close();
-        }
-        return document;
+        return DocumentCodecs.decode(ByteBuffer.wrap(data));
     }
 
     /**
-     * This method is contributing to the on disk document format.
+     * Reads the document from the remaining bytes of the buffer, in place if it is a heap buffer.
      *
+     * @param data
      * @return
      * @throws IOException
      */
-    public static byte[] serialize(Document document) throws IOException {
-        ByteArrayOutputStream documentContent = new ByteArrayOutputStream();
+    public static Document deserialize(ByteBuffer data) throws IOException {
+        return DocumentCodecs.decode(data);
+    }
 
-        ObjectOutputStream oos = new ObjectOutputStream(documentContent);
-        oos.writeObject(document);
-        documentContent.close();
-        return documentContent.toByteArray();
+    /**
+     * This method is contributing to the on disk document format. The document is encoded with the configured
+     * codec (see {@link DocumentCodecs}).
+     *
+     * @return
+     * @throws IOException
+     */
+    public static byte[] serialize(Document document) throws IOException {
+        return DocumentCodecs.encode(document);
     }
 
     public String toString() {
@@ -0,0 +1,66 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts documents to and from their on disk bytes. The codecs are registered in {@link DocumentCodecs}, the
+ * built in ones and the ones found with {@link java.util.ServiceLoader} (listed in
+ * <code>META-INF/services/data.DocumentCodec</code>).
+ *
+ * The encoded document is prefixed with the codec id, so every document is read with the codec which wrote it.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public interface DocumentCodec {
+
+    /**
+     * Returns the id of the codec, written before every encoded document. The ids from 2 to 127 are free for
+     * other codecs.
+     *
+     * @return
+     */
+    Integer getId();
+
+    /**
+     * Returns the maximum number of bytes needed to encode the document.
+     *
+     * @param document
+     * @return
+     */
+    Integer getMaxEncodedSize(Document document);
+
+    /**
+     * Encodes the document at the position of the buffer, which has at least getMaxEncodedSize bytes remaining.
+     *
+     * @param document
+     * @param buffer
+     * @throws IOException
+     */
+    void encode(Document document, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Decodes a document from the remaining bytes of the buffer.
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    Document decode(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,101 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the document codecs encoding and decoding the same documents, printing the time and the encoded
+ * bytes per document of every run. The first runs warm up the JIT compiler and are not printed.
+ *
+ * This is a plain timing loop, not a JMH benchmark: it runs in a single JVM and does not guard against dead code
+ * elimination or profile pollution between the codecs, so the numbers are only indicative.
+ *
+ * Usage: <code>DocumentCodecBenchmark [documents] [content size] [runs]</code>
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class DocumentCodecBenchmark {
+    private static final Integer WARMUP_RUNS = 5;
+
+    public static void main(String[] args) {
+        Integer count = args.length > 0 ? Integer.valueOf(args[0]) : 100000;
+        Integer contentSize = args.length > 1 ? Integer.valueOf(args[1]) : 512;
+        Integer runs = args.length > 2 ? Integer.valueOf(args[2]) : 5;
+
+        List<Document> documents = new ArrayList<>();
+        Random random = new Random(22);
+        for(Integer i = 0; i < count; i++) {
+            Document document = new Document(i.longValue(), "document" + i);
+            char[] content = new char[contentSize];
+            for(int j = 0; j < content.length; j++) {
+                content[j] = (char) ('a' + random.nextInt(26));
+            }
+            document.setContent(new String(content));
+            documents.add(document);
+        }
+
+        try {
+            for(Integer codec : Arrays.asList(SerializableDocumentCodec.ID, BinaryDocumentCodec.ID)) {
+                for(Integer n = 0; n < WARMUP_RUNS + runs; n++) {
+                    long[] result = run(documents, codec);
+                    if(n >= WARMUP_RUNS) {
+                        System.out.println(String.format("%s: encode %.1f ns/doc, decode %.1f ns/doc, %.1f bytes/doc",
+                                DocumentCodecs.get(codec).getClass().getSimpleName(),
+                                result[0] / (double) count, result[1] / (double) count, result[2] / (double) count));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Encodes and decodes all the documents, returning the encode nanoseconds, the decode nanoseconds, the
+     * encoded bytes and the decoded content characters (so the decoding cannot be optimized away).
+     *
+     * @param documents
+     * @param codec
+     * @return
+     * @throws IOException
+     */
+    public static long[] run(List<Document> documents, Integer codec) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(documents.size());
+        long bytes = 0;
+        long start = System.nanoTime();
+        for(Document document : documents) {
+            byte[] data = DocumentCodecs.encode(document, codec);
+            bytes += data.length;
+            encoded.add(data);
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long check = 0;
+        for(byte[] data : encoded) {
+            check += DocumentCodecs.decode(ByteBuffer.wrap(data)).getContent().length();
+        }
+        long decodeNanos = System.nanoTime() - start;
+        return new long[] { encodeNanos, decodeNanos, bytes, check };
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package data;
+
+import conf.Configuration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the document codecs. New documents are written with {@link Configuration#DOCUMENT_CODEC}, and every
+ * document is read with the codec whose id prefixes it.
+ *
+ * Encoding goes through a buffer reused by every thread, which only grows for bigger documents.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class DocumentCodecs {
+    /*
+     * First byte of a Java serialization stream, written by the documents stored before the codecs existed
+     */
+    private static final int SERIALIZATION_MAGIC = 0xac;
+    private static final Map<Integer, DocumentCodec> codecs = new ConcurrentHashMap<>();
+    private static final ThreadLocal<ByteBuffer> encodeBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(Configuration.BLOCK_SIZE));
+
+    static {
+        register(new SerializableDocumentCodec());
+        register(new BinaryDocumentCodec());
+        for(DocumentCodec codec : ServiceLoader.load(DocumentCodec.class)) {
+            register(codec);
+        }
+    }
+
+    /**
+     * Registers a codec, replacing any codec with the same id.
+     *
+     * @param codec
+     */
+    public static void register(DocumentCodec codec) {
+        if(codec.getId() < 0 || codec.getId() > 127) {
+            throw new IllegalArgumentException("invalid codec id [" + codec.getId() + "]");
+        }
+        codecs.put(codec.getId(), codec);
+    }
+
+    /**
+     * Returns the codec with the id, or null if there is none.
+     *
+     * @param id
+     * @return
+     */
+    public static DocumentCodec get(Integer id) {
+        return codecs.get(id);
+    }
+
+    /**
+     * Encodes the document with the configured codec.
+     *
+     * @param document
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(Document document) throws IOException {
+        return encode(document, Configuration.DOCUMENT_CODEC);
+    }
+
+    /**
+     * Encodes the document with a codec, prefixed by the codec id.
+     *
+     * @param document
+     * @param codecId
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(Document document, Integer codecId) throws IOException {
+        DocumentCodec codec = codecs.get(codecId);
+        if(codec == null) {
+            throw new IOException("unknown document codec [" + codecId + "]");
+        }
+        int size = codec.getMaxEncodedSize(document) + 1;
+        ByteBuffer buffer = encodeBuffer.get();
+        if(buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+            encodeBuffer.set(buffer);
+        }
+        buffer.clear();
+        if(!SerializableDocumentCodec.ID.equals(codecId)) {
+            buffer.put(codecId.byteValue());
+        }
+        codec.encode(document, buffer);
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Decodes the document in the remaining bytes of the buffer with the codec which encoded it.
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    public static Document decode(ByteBuffer buffer) throws IOException {
+        if(!buffer.hasRemaining()) {
+            throw new IOException("empty document");
+        }
+        int id = buffer.get(buffer.position()) & 0xff;
+        if(id == SERIALIZATION_MAGIC) {
+            return codecs.get(SerializableDocumentCodec.ID).decode(buffer);
+        }
+        DocumentCodec codec = codecs.get(id);
+        if(codec == null) {
+            throw new IOException("unknown document codec [" + id + "]");
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(body.position() + 1);
+        return codec.decode(body.slice());
+    }
+}
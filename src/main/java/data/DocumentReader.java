@@ -18,11 +18,13 @@ package data;
 
 import file.FileDataBlock;
 import file.FileDataBlockRef;
+import io.FileDataDictionary;
 import io.FileDataRecordFormat;
 import io.FileDataReader;
 import memory.DocumentIndexCache;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -60,7 +62,7 @@ public class DocumentReader {
         if(baos.size() == 0) {
             return null;
         }
-        byte[] document = FileDataRecordFormat.decode(baos.toByteArray());
-        return Document.deserialize(document);
+        return Document.deserialize(FileDataRecordFormat.decode(ByteBuffer.wrap(baos.toByteArray()),
+                FileDataDictionary.get(ref.getFilename())));
     }
 }
@@ -0,0 +1,75 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The original document format, Java serialization. It is kept to read the documents written before the codecs
+ * existed, which carry no codec id: a serialization stream always starts with 0xACED.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SerializableDocumentCodec implements DocumentCodec {
+    public static final Integer ID = 0;
+
+    @Override
+    public Integer getId() {
+        return ID;
+    }
+
+    @Override
+    public Integer getMaxEncodedSize(Document document) {
+        return serialize(document).length;
+    }
+
+    @Override
+    public void encode(Document document, ByteBuffer buffer) throws IOException {
+        buffer.put(serialize(document));
+    }
+
+    @Override
+    public Document decode(ByteBuffer buffer) throws IOException {
+        ByteArrayInputStream bais;
+        if(buffer.hasArray()) {
+            bais = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        } else {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+            bais = new ByteArrayInputStream(data);
+        }
+        try(ObjectInputStream ois = new ObjectInputStream(bais)) {
+            return Document.class.cast(ois.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("index class format error");
+        }
+    }
+
+    private static byte[] serialize(Document document) {
+        try {
+            ByteArrayOutputStream documentContent = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(documentContent);
+            oos.writeObject(document);
+            oos.close();
+            return documentContent.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
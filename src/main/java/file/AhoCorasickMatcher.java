@@ -0,0 +1,196 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Multiple pattern matcher using the
+ * <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm">Aho-Corasick</a> automaton.
+ *
+ * All the patterns are searched in a single pass over the data, reading every byte only once whatever the
+ * number of patterns is. The automaton is built as a complete transition table, so each byte costs a single
+ * table lookup. Bytes which do not appear in any pattern share the same column of the table in order to keep
+ * it small.
+ *
+ * The matcher is immutable once built and can be shared by all the search threads.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class AhoCorasickMatcher implements TextMatcher {
+    private final List<String> patterns;
+    private final int[] patternLength;
+    private final int[] byteClass;
+    private final int classes;
+    private final int[] transitions;
+    private final int[][] output;
+
+    /**
+     * AhoCorasickMatcher constructor.
+     *
+     * @param patterns
+     */
+    public AhoCorasickMatcher(List<String> patterns) {
+        if(patterns == null || patterns.isEmpty()) {
+            throw new IllegalArgumentException("no patterns");
+        }
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        this.patternLength = new int[patterns.size()];
+
+        byte[][] data = new byte[patterns.size()][];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = patterns.get(i).getBytes(StandardCharsets.UTF_8);
+            if(data[i].length == 0) {
+                throw new IllegalArgumentException("empty pattern");
+            }
+            this.patternLength[i] = data[i].length;
+        }
+
+        /*
+         * Class 0 is for the bytes not used by any pattern
+         */
+        this.byteClass = new int[256];
+        int nextClass = 1;
+        for(byte[] pattern : data) {
+            for(byte b : pattern) {
+                if(this.byteClass[b & 0xff] == 0) {
+                    this.byteClass[b & 0xff] = nextClass++;
+                }
+            }
+        }
+        this.classes = nextClass;
+
+        /*
+         * Builds the trie. Missing transitions are -1 until the failure links are computed.
+         */
+        int maxStates = 1;
+        for(byte[] pattern : data) {
+            maxStates += pattern.length;
+        }
+        int[] trie = new int[maxStates * this.classes];
+        Arrays.fill(trie, -1);
+        List<List<Integer>> outputs = new ArrayList<>();
+        outputs.add(new ArrayList<>());
+        int states = 1;
+        for(int i = 0; i < data.length; i++) {
+            int state = 0;
+            for(byte b : data[i]) {
+                int c = this.byteClass[b & 0xff];
+                if(trie[state * this.classes + c] < 0) {
+                    trie[state * this.classes + c] = states++;
+                    outputs.add(new ArrayList<>());
+                }
+                state = trie[state * this.classes + c];
+            }
+            outputs.get(state).add(i);
+        }
+
+        /*
+         * Breadth first computation of the failure links, turning the trie into a complete automaton
+         */
+        int[] failure = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for(int c = 0; c < this.classes; c++) {
+            int next = trie[c];
+            if(next < 0) {
+                trie[c] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while(!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs.get(state).addAll(outputs.get(failure[state]));
+            for(int c = 0; c < this.classes; c++) {
+                int next = trie[state * this.classes + c];
+                if(next < 0) {
+                    trie[state * this.classes + c] = trie[failure[state] * this.classes + c];
+                } else {
+                    failure[next] = trie[failure[state] * this.classes + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * this.classes);
+        this.output = new int[states][];
+        for(int state = 0; state < states; state++) {
+            List<Integer> ids = outputs.get(state);
+            if(!ids.isEmpty()) {
+                this.output[state] = ids.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    public List<String> getPatterns() {
+        return this.patterns;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        List<byte[]> literals = new ArrayList<>();
+        for(String pattern : this.patterns) {
+            literals.add(pattern.getBytes(StandardCharsets.UTF_8));
+        }
+        return literals;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int state = 0;
+        for(int i = from; i < to; i++) {
+            state = this.transitions[state * this.classes + this.byteClass[buffer.get(i) & 0xff]];
+            if(this.output[state] != null) {
+                /*
+                 * The longest pattern ending here is the first one in the output, as it was added
+                 * before the outputs inherited from the failure states
+                 */
+                return i - this.patternLength[this.output[state][0]] + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public List<String> matchedPatterns(ByteBuffer buffer, int lineStart, int lineEnd) {
+        boolean[] matched = new boolean[this.patterns.size()];
+        int state = 0;
+        for(int i = lineStart; i < lineEnd; i++) {
+            state = this.transitions[state * this.classes + this.byteClass[buffer.get(i) & 0xff]];
+            if(this.output[state] != null) {
+                for(int id : this.output[state]) {
+                    matched[id] = true;
+                }
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for(int id = 0; id < matched.length; id++) {
+            if(matched[id]) {
+                result.add(this.patterns.get(id));
+            }
+        }
+        return result;
+    }
+}
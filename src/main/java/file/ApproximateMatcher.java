@@ -0,0 +1,233 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Approximate matcher finding the lines containing the pattern with up to maxEdits edits (inserted, deleted or
+ * replaced bytes), using the bit-parallel algorithm of
+ * <a href="https://doi.org/10.1145/316542.316550">Myers</a>.
+ *
+ * The edit distance column of every text byte is kept in two 64 bit vectors, so every byte costs a few word
+ * operations instead of a row of the dynamic programming table. The pattern is limited to 64 bytes. The state is
+ * reset at every EOL, so a match never spans two lines. The edits are counted over the UTF-8 bytes, so a
+ * replaced non ASCII character can count as more than one edit.
+ *
+ * Any line within maxEdits edits contains at least one of maxEdits + 1 pieces of the pattern exactly, as every
+ * edit breaks at most one piece. When the pieces are long enough they are searched first with
+ * {@link AhoCorasickMatcher} and the bit-parallel scan only runs over the lines containing one of them. The
+ * pieces are also the required literals of the trigram index.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ApproximateMatcher implements TextMatcher {
+    private final String pattern;
+    private final Integer maxEdits;
+    private final long[] peq;
+    private final long last;
+    private final int length;
+    private final TextMatcher prefilter;
+
+    /**
+     * ApproximateMatcher constructor.
+     *
+     * @param pattern
+     * @param maxEdits
+     */
+    public ApproximateMatcher(String pattern, Integer maxEdits) {
+        byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length == 0 || bytes.length > 64) {
+            throw new IllegalArgumentException("the pattern must have between 1 and 64 bytes");
+        }
+        if(maxEdits < 0 || maxEdits >= bytes.length) {
+            throw new IllegalArgumentException("the maximum edits must be lower than the pattern length");
+        }
+        this.pattern = pattern;
+        this.maxEdits = maxEdits;
+        this.length = bytes.length;
+        this.last = 1L << (this.length - 1);
+
+        /*
+         * The positions of every byte value within the pattern
+         */
+        this.peq = new long[256];
+        for(int i = 0; i < bytes.length; i++) {
+            this.peq[bytes[i] & 0xff] |= 1L << i;
+        }
+
+        List<String> pieces = pieces(pattern, maxEdits + 1);
+        Boolean selective = !pieces.isEmpty();
+        for(String piece : pieces) {
+            selective &= piece.getBytes(StandardCharsets.UTF_8).length >= 3;
+        }
+        this.prefilter = !selective ? null : pieces.size() == 1 ? new BoyerMooreHorspoolMatcher(pieces.get(0)) :
+                new AhoCorasickMatcher(pieces);
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    public Integer getMaxEdits() {
+        return this.maxEdits;
+    }
+
+    /**
+     * Returns true if the candidate lines are selected by a literal scan.
+     *
+     * @return
+     */
+    public Boolean hasPrefilter() {
+        return this.prefilter != null;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return this.prefilter == null ? null : this.prefilter.requiredLiterals();
+    }
+
+    /**
+     * Returns the start of the first line within [from, to) matching the pattern. The range must start at a
+     * line start.
+     */
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        if(this.prefilter == null) {
+            return scan(buffer, from, to);
+        }
+        int position = from;
+        while(position < to) {
+            int candidate = this.prefilter.indexOf(buffer, position, to);
+            if(candidate < 0) {
+                return -1;
+            }
+            int lineStart = LineScanner.lastIndexOfEOL(buffer, position, candidate) + 1;
+            int lineEnd = LineScanner.indexOfEOL(buffer, candidate, to);
+            if(lineEnd < 0) {
+                lineEnd = to;
+            }
+            if(scan(buffer, lineStart, lineEnd) >= 0) {
+                return lineStart;
+            }
+            position = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the lowest number of edits turning the pattern into a substring of the [from, to) range, which
+     * must not contain an EOL.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    public int distance(ByteBuffer buffer, int from, int to) {
+        long vp = -1L;
+        long vn = 0L;
+        int score = this.length;
+        int best = score;
+        for(int i = from; i < to; i++) {
+            long eq = this.peq[buffer.get(i) & 0xff];
+            long xv = eq | vn;
+            long xh = (((eq & vp) + vp) ^ vp) | eq;
+            long ph = vn | ~(xh | vp);
+            long mh = vp & xh;
+            if((ph & this.last) != 0) {
+                score++;
+            } else if((mh & this.last) != 0) {
+                score--;
+            }
+            ph <<= 1;
+            mh <<= 1;
+            vp = mh | ~(xv | ph);
+            vn = ph & xv;
+            best = Math.min(best, score);
+        }
+        return best;
+    }
+
+    /**
+     * Runs the bit-parallel scan over [from, to) and returns the start of the first line with a match.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    private int scan(ByteBuffer buffer, int from, int to) {
+        long vp = -1L;
+        long vn = 0L;
+        int score = this.length;
+        int lineStart = from;
+        for(int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xff;
+            if(b == LineScanner.EOL) {
+                vp = -1L;
+                vn = 0L;
+                score = this.length;
+                lineStart = i + 1;
+                continue;
+            }
+            long eq = this.peq[b];
+            long xv = eq | vn;
+            long xh = (((eq & vp) + vp) ^ vp) | eq;
+            long ph = vn | ~(xh | vp);
+            long mh = vp & xh;
+            if((ph & this.last) != 0) {
+                score++;
+            } else if((mh & this.last) != 0) {
+                score--;
+            }
+            ph <<= 1;
+            mh <<= 1;
+            vp = mh | ~(xv | ph);
+            vn = ph & xv;
+            if(score <= this.maxEdits) {
+                return lineStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the pattern in count pieces of about the same number of characters, or returns an empty list if
+     * it has fewer characters than pieces.
+     *
+     * @param pattern
+     * @param count
+     * @return
+     */
+    static List<String> pieces(String pattern, Integer count) {
+        List<String> pieces = new ArrayList<>();
+        int[] codePoints = pattern.codePoints().toArray();
+        if(codePoints.length < count) {
+            return pieces;
+        }
+        for(int i = 0; i < count; i++) {
+            int start = i * codePoints.length / count;
+            int end = (i + 1) * codePoints.length / count;
+            pieces.add(new String(codePoints, start, end - start));
+        }
+        return pieces;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import io.ByteScanner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Literal substring matcher using the
+ * <a href="https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore%E2%80%93Horspool_algorithm">Boyer-Moore-Horspool</a>
+ * algorithm.
+ *
+ * The pattern is compared from its last byte backwards and, on a mismatch, the window skips ahead by
+ * the distance stored for the byte under the last pattern position. For most text this means only a
+ * fraction of the bytes in the buffer are ever read.
+ *
+ * Short patterns barely skip anything, so they look for their first byte 8 bytes at a time with
+ * {@link ByteScanner} instead, and only compare the rest of the pattern at those candidates.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class BoyerMooreHorspoolMatcher implements TextMatcher {
+    private static final Integer SHORT_PATTERN_LENGTH = 4;
+    private final byte[] pattern;
+    private final int[] shift;
+
+    /**
+     * BoyerMooreHorspoolMatcher constructor.
+     *
+     * @param pattern
+     */
+    public BoyerMooreHorspoolMatcher(String pattern) {
+        this(pattern.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * BoyerMooreHorspoolMatcher constructor.
+     *
+     * @param pattern
+     */
+    public BoyerMooreHorspoolMatcher(byte[] pattern) {
+        this.pattern = pattern.clone();
+        this.shift = new int[256];
+
+        /*
+         * Bytes which are not in the pattern allow skipping the whole pattern length
+         */
+        for(int i = 0; i < this.shift.length; i++) {
+            this.shift[i] = this.pattern.length;
+        }
+        for(int i = 0; i < this.pattern.length - 1; i++) {
+            this.shift[this.pattern[i] & 0xff] = this.pattern.length - 1 - i;
+        }
+    }
+
+    public byte[] getPattern() {
+        return this.pattern.clone();
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return Collections.singletonList(getPattern());
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int last = this.pattern.length - 1;
+        if(last < 0) {
+            return from <= to ? from : -1;
+        }
+
+        if(this.pattern.length < SHORT_PATTERN_LENGTH) {
+            return indexOfFirstByte(buffer, from, to);
+        }
+
+        byte lastByte = this.pattern[last];
+        for(int i = from + last; i < to; ) {
+            byte b = buffer.get(i);
+            if(b == lastByte) {
+                int j = last - 1, k = i - 1;
+                while(j >= 0 && buffer.get(k) == this.pattern[j]) {
+                    j--;
+                    k--;
+                }
+                if(j < 0) {
+                    return i - last;
+                }
+            }
+            i += this.shift[b & 0xff];
+        }
+        return -1;
+    }
+
+    private int indexOfFirstByte(ByteBuffer buffer, int from, int to) {
+        int last = this.pattern.length - 1;
+        for(int i = from; (i = ByteScanner.indexOf(buffer, this.pattern[0], i, to - last)) >= 0; i++) {
+            int j = 1;
+            while(j <= last && buffer.get(i + j) == this.pattern[j]) {
+                j++;
+            }
+            if(j > last) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
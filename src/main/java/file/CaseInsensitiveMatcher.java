@@ -0,0 +1,158 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Case insensitive literal matcher working directly over UTF-8 bytes, so the lines are never lowercased.
+ *
+ * Every character of the pattern is expanded into its case variants (lower, upper and title case) encoded as
+ * UTF-8. The variants of a character are kept when they have the same encoded length, which covers the letters
+ * of the usual alphabets. A few variants with a different length, such as the Kelvin sign for k, are not
+ * matched.
+ *
+ * As every variant of the pattern has the same length, the search is a
+ * <a href="https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore%E2%80%93Horspool_algorithm">Boyer-Moore-Horspool</a>
+ * scan where every pattern position accepts a set of bytes, the folded byte tables. The skip distances are
+ * almost as long as the case sensitive ones, so the throughput is about the same.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class CaseInsensitiveMatcher implements TextMatcher {
+    private final String pattern;
+    private final byte[][][] variants;
+    private final boolean[][] accepted;
+    private final int[] shift;
+    private final int length;
+
+    /**
+     * CaseInsensitiveMatcher constructor.
+     *
+     * @param pattern
+     */
+    public CaseInsensitiveMatcher(String pattern) {
+        this.pattern = pattern;
+        int[] codePoints = pattern.codePoints().toArray();
+        this.variants = new byte[codePoints.length][][];
+        List<boolean[]> accepted = new ArrayList<>();
+        for(int i = 0; i < codePoints.length; i++) {
+            this.variants[i] = variants(codePoints[i]);
+            for(int j = 0; j < this.variants[i][0].length; j++) {
+                boolean[] bytes = new boolean[256];
+                for(byte[] variant : this.variants[i]) {
+                    bytes[variant[j] & 0xff] = true;
+                }
+                accepted.add(bytes);
+            }
+        }
+        this.accepted = accepted.toArray(new boolean[0][]);
+        this.length = this.accepted.length;
+
+        /*
+         * A byte accepted at several positions skips up to the last of them
+         */
+        this.shift = new int[256];
+        for(int b = 0; b < this.shift.length; b++) {
+            this.shift[b] = this.length;
+        }
+        for(int j = 0; j < this.length - 1; j++) {
+            for(int b = 0; b < 256; b++) {
+                if(this.accepted[j][b]) {
+                    this.shift[b] = this.length - 1 - j;
+                }
+            }
+        }
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int last = this.length - 1;
+        if(last < 0) {
+            return from <= to ? from : -1;
+        }
+
+        boolean[] lastBytes = this.accepted[last];
+        for(int i = from + last; i < to; ) {
+            int b = buffer.get(i) & 0xff;
+            if(lastBytes[b] && matchesAt(buffer, i - last)) {
+                return i - last;
+            }
+            i += this.shift[b];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(ByteBuffer buffer, int position) {
+        for(byte[][] characterVariants : this.variants) {
+            int length = characterVariants[0].length;
+            boolean found = false;
+            for(int v = 0; v < characterVariants.length && !found; v++) {
+                byte[] variant = characterVariants[v];
+                int j = 0;
+                while(j < length && buffer.get(position + j) == variant[j]) {
+                    j++;
+                }
+                found = j == length;
+            }
+            if(!found) {
+                return false;
+            }
+            position += length;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the UTF-8 encodings of the case variants of the character with the same length as the character.
+     *
+     * @param codePoint
+     * @return
+     */
+    private static byte[][] variants(int codePoint) {
+        Set<Integer> codePoints = new LinkedHashSet<>();
+        codePoints.add(codePoint);
+        codePoints.add(Character.toLowerCase(codePoint));
+        codePoints.add(Character.toUpperCase(codePoint));
+        codePoints.add(Character.toTitleCase(codePoint));
+        codePoints.add(Character.toLowerCase(Character.toUpperCase(codePoint)));
+        codePoints.add(Character.toUpperCase(Character.toLowerCase(codePoint)));
+
+        byte[] original = encode(codePoint);
+        List<byte[]> variants = new ArrayList<>();
+        for(Integer variant : codePoints) {
+            byte[] data = encode(variant);
+            if(data.length == original.length) {
+                variants.add(data);
+            }
+        }
+        return variants.toArray(new byte[0][]);
+    }
+
+    private static byte[] encode(int codePoint) {
+        return new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+import io.BufferRing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Searches data which cannot be mapped, such as pipes, the standard input or sockets, reading it from a
+ * channel.
+ *
+ * The channel is read from the calling thread into a fixed ring of direct buffers (see {@link BufferRing}).
+ * Every full buffer is cut at its last complete line and handed to the search threads, and the partial line at
+ * the end is moved to the next buffer. When all the buffers are in use, the reader waits for the oldest one to be
+ * scanned, so the memory used is bounded by the ring whatever the size of the input. A line longer than a buffer
+ * makes the buffer grow.
+ *
+ * The matches are delivered from the calling thread in the input order, with their offset within the input.
+ * The channel is expected to be in blocking mode.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ChannelTextSearch {
+
+    /**
+     * Searches the text in the whole stream.
+     *
+     * @param in
+     * @param match
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final InputStream in, final String match) throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(Channels.newChannel(in), new BoyerMooreHorspoolMatcher(match), matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the data read from the channel until its end, pushing every match to the consumer from the
+     * calling thread.
+     *
+     * @param channel
+     * @param matcher
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final ReadableByteChannel channel, final TextMatcher matcher,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        Pipeline pipeline = new Pipeline(channel, matcher, consumer, maxMatches);
+        try {
+            pipeline.run();
+        } finally {
+            pipeline.stop.set(true);
+        }
+
+        SearchStatistics statistics = new SearchStatistics(pipeline.delivered, pipeline.offset,
+                System.nanoTime() - startTime, pipeline.isLimitReached(), pipeline.chunks);
+        SearchMonitor.getInstance().record(statistics);
+        return statistics;
+    }
+
+    /**
+     * Prints the lines of the standard input containing the text, like <code>grep -F</code>:
+     *
+     * <pre>
+     *     zcat file.gz | java -cp target/classes file.ChannelTextSearch &lt;text&gt;
+     * </pre>
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.out.println("Usage: ChannelTextSearch <text>");
+            return;
+        }
+        try {
+            search(Channels.newChannel(System.in), new BoyerMooreHorspoolMatcher(args[0]),
+                    searchMatch -> System.out.println(searchMatch.getLine()), null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A buffer being scanned and the matches found in it.
+     */
+    private static class Chunk {
+        private final ForkJoinTask<List<ChunkStatistics>> search;
+        private final List<SearchMatch> matches;
+
+        Chunk(ForkJoinTask<List<ChunkStatistics>> search, List<SearchMatch> matches) {
+            this.search = search;
+            this.matches = matches;
+        }
+    }
+
+    private static class Pipeline {
+        private final ReadableByteChannel channel;
+        private final TextMatcher matcher;
+        private final Consumer<SearchMatch> consumer;
+        private final Long maxMatches;
+        private final AtomicBoolean stop;
+        private final BufferRing ring;
+        private final Deque<Chunk> pending;
+        private final List<ChunkStatistics> chunks;
+        private Long offset;
+        private Long delivered;
+
+        Pipeline(ReadableByteChannel channel, TextMatcher matcher, Consumer<SearchMatch> consumer,
+                 Long maxMatches) {
+            this.channel = channel;
+            this.matcher = matcher;
+            this.consumer = consumer;
+            this.maxMatches = maxMatches;
+            this.stop = new AtomicBoolean(false);
+            this.ring = new BufferRing(Configuration.READ_BUFFER_POOL_SIZE, true);
+            this.pending = new ArrayDeque<>();
+            this.chunks = new ArrayList<>();
+            this.offset = 0L;
+            this.delivered = 0L;
+        }
+
+        void run() throws IOException {
+            ByteBuffer buffer = next();
+            while(buffer != null) {
+                Boolean eof = this.channel.read(buffer) < 0;
+                if(!eof && buffer.hasRemaining()) {
+                    deliverDone();
+                    continue;
+                }
+
+                int limit = buffer.position();
+                int usable = eof ? limit : LineScanner.lastIndexOfEOL(buffer, 0, limit) + 1;
+                if(usable == 0 && !eof) {
+                    /*
+                     * The line does not fit in the buffer
+                     */
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    this.ring.release(buffer);
+                    buffer = bigger;
+                    continue;
+                }
+
+                /*
+                 * Keeping the partial line for the next buffer
+                 */
+                ByteBuffer next = eof ? null : next();
+                if(next != null) {
+                    ByteBuffer rest = buffer.duplicate();
+                    rest.position(usable);
+                    rest.limit(limit);
+                    if(rest.remaining() >= next.capacity()) {
+                        /*
+                         * The partial line comes from a grown buffer and does not fit in a ring buffer
+                         */
+                        this.ring.release(next);
+                        next = ByteBuffer.allocate(rest.remaining() * 2);
+                    }
+                    next.put(rest);
+                }
+                if(usable > 0) {
+                    submit(buffer, usable);
+                } else {
+                    this.ring.release(buffer);
+                }
+                buffer = next;
+                deliverDone();
+            }
+            while(!this.pending.isEmpty() && !this.stop.get()) {
+                deliverFirst();
+            }
+        }
+
+        /**
+         * Takes a free buffer, delivering the oldest buffers until one is released.
+         *
+         * @return null if the search was stopped
+         * @throws IOException
+         */
+        private ByteBuffer next() throws IOException {
+            ByteBuffer buffer = this.ring.poll();
+            while(buffer == null && !this.stop.get()) {
+                if(this.pending.isEmpty()) {
+                    return this.ring.take(this.stop);
+                }
+                deliverFirst();
+                buffer = this.ring.poll();
+            }
+            return this.stop.get() ? null : buffer;
+        }
+
+        private void submit(ByteBuffer buffer, int usable) {
+            List<SearchMatch> matches = new ArrayList<>();
+            ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(new long[] { this.offset },
+                    new long[] { this.offset + usable }, (chunk, start, end) -> {
+                        try {
+                            ByteBuffer view = buffer.duplicate();
+                            view.position(0);
+                            view.limit(usable);
+                            LineScanner.scan(view, 0, usable, this.matcher, (b, lineStart, lineEnd, position) -> {
+                                matches.add(ConcurrentFileTextSearch.searchMatch(null, this.matcher, b, lineStart,
+                                        lineEnd, start + position));
+                                return !this.stop.get();
+                            });
+                            return Long.valueOf(matches.size());
+                        } finally {
+                            this.ring.release(buffer);
+                        }
+                    }, this.stop);
+            this.pending.add(new Chunk(search, matches));
+            this.offset += usable;
+        }
+
+        private void deliverDone() throws IOException {
+            while(!this.pending.isEmpty() && this.pending.peek().search.isDone() && !this.stop.get()) {
+                deliverFirst();
+            }
+        }
+
+        private void deliverFirst() throws IOException {
+            Chunk chunk = this.pending.poll();
+            this.chunks.addAll(SearchScheduler.get(chunk.search, this.stop));
+            for(SearchMatch searchMatch : chunk.matches) {
+                if(this.stop.get()) {
+                    return;
+                }
+                this.consumer.accept(searchMatch);
+                this.delivered++;
+                if(isLimitReached()) {
+                    this.stop.set(true);
+                }
+            }
+        }
+
+        Boolean isLimitReached() {
+            return this.maxMatches != null && this.maxMatches > 0 && this.delivered >= this.maxMatches;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+/**
+ * Execution details of a single chunk of a search.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ChunkStatistics {
+    private final Integer chunk;
+    private final Long start;
+    private final Long end;
+    private final Long elapsedNanos;
+    private final Long matches;
+    private final String thread;
+
+    /**
+     * ChunkStatistics constructor.
+     *
+     * @param chunk
+     * @param start
+     * @param end
+     * @param elapsedNanos
+     * @param matches
+     * @param thread
+     */
+    public ChunkStatistics(final Integer chunk, final Long start, final Long end, final Long elapsedNanos,
+                           final Long matches, final String thread) {
+        this.chunk = chunk;
+        this.start = start;
+        this.end = end;
+        this.elapsedNanos = elapsedNanos;
+        this.matches = matches;
+        this.thread = thread;
+    }
+
+    public Integer getChunk() {
+        return this.chunk;
+    }
+
+    public Long getStart() {
+        return this.start;
+    }
+
+    public Long getEnd() {
+        return this.end;
+    }
+
+    public Long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    public Long getMatches() {
+        return this.matches;
+    }
+
+    /**
+     * Returns the name of the thread which scanned the chunk.
+     *
+     * @return
+     */
+    public String getThread() {
+        return this.thread;
+    }
+
+    public String toString() {
+        return "chunk " + this.chunk + " [" + this.start + "-" + this.end + "] " + this.elapsedNanos + "ns " +
+                this.matches + " matches (" + this.thread + ")";
+    }
+}
@@ -0,0 +1,708 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+import io.BufferRing;
+import io.ByteScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Searches gzip and zlib (deflate) compressed files, reading them compressed.
+ *
+ * The file is decompressed into a ring of reusable buffers. Every buffer is cut at its last complete line and
+ * scanned by the search threads, with the same matcher as the mapped files, while the next one is being
+ * decompressed. The partial line at the end is moved to the next buffer.
+ *
+ * A gzip file made of several members (concatenated files, pigz or bgzip output) is decompressed in parallel,
+ * one member per decompression thread. The members are found looking for gzip headers, and only the ones chained
+ * from the start of the file, every member starting where the previous one ends, are used, so a header-like
+ * sequence within the compressed data is ignored. A line split between two members is scanned once both are
+ * decompressed.
+ *
+ * The matches are delivered in the file order, with their offset in the decompressed data.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class CompressedFileTextSearch {
+    private static final Integer HEAD = 1;
+    private static final Integer SCAN = 2;
+    private static final Integer END = 3;
+    private static final ExecutorService decompressExecutor;
+
+    static {
+        /*
+         * Daemon threads, the pool is shared by all the searches and never shut down
+         */
+        decompressExecutor = Executors.newFixedThreadPool(Configuration.DECOMPRESS_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "decompress");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns true if the file starts with the gzip magic. A zlib header is only two bytes with a checksum, too
+     * weak to tell a zlib file from a text file, so zlib files are only searched on request.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static Boolean isGzip(final File f) throws IOException {
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return isGzip(channel);
+        }
+    }
+
+    /**
+     * Searches the text in the compressed file and returns the matches in the file order.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final File f, final String match, final Integer threads)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(f, new BoyerMooreHorspoolMatcher(match), threads, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the compressed file and pushes every match to the consumer, in the file order, from the calling
+     * thread. Up to threads gzip members are decompressed at the same time.
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final File f, final TextMatcher matcher, final Integer threads,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        Delivery delivery = new Delivery(f, matcher, consumer, maxMatches, stop);
+
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            Long size = channel.size();
+            Boolean zlib = !isGzip(channel) && isZlib(channel);
+            MemberCandidates candidates = new MemberCandidates(channel, size, zlib);
+            if(!Long.valueOf(0L).equals(candidates.get(0))) {
+                throw new IOException(f.getName() + " is not a gzip or zlib file");
+            }
+
+            /*
+             * Every decompression thread holds up to two buffers, the rest are being scanned
+             */
+            BufferRing ring = new BufferRing(Math.max(Configuration.READ_BUFFER_POOL_SIZE,
+                    Configuration.DECOMPRESS_THREADS * 2 + 2), false);
+            List<Member> members = new ArrayList<>();
+            Integer window = Math.max(1, threads);
+            Integer submitted = 0;
+            Long offset = 0L;
+            try {
+                while(offset < size && !stop.get()) {
+                    Integer n = candidates.indexOf(offset);
+                    if(n < 0) {
+                        throw new IOException("invalid gzip member at offset " + offset);
+                    }
+                    for(Long start; submitted < n + window && (start = candidates.get(submitted)) != null;
+                        submitted++) {
+                        Member member = new Member(f, channel, start, zlib, matcher, ring, stop);
+                        members.add(member);
+                        decompressExecutor.execute(member);
+                    }
+                    offset = delivery.deliver(members.get(n));
+                    members.set(n, null);
+                }
+                delivery.flush();
+            } finally {
+                /*
+                 * The speculative members still running stop at their next buffer
+                 */
+                stop.set(true);
+            }
+        }
+
+        SearchStatistics statistics = new SearchStatistics(delivery.delivered, delivery.base,
+                System.nanoTime() - startTime, delivery.isLimitReached(), delivery.chunks);
+        SearchMonitor.getInstance().record(statistics);
+        return statistics;
+    }
+
+    private static Boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer header = readHeader(channel);
+        return header.limit() >= 2 && (header.get(0) & 0xff) == 0x1f && (header.get(1) & 0xff) == 0x8b;
+    }
+
+    private static Boolean isZlib(FileChannel channel) throws IOException {
+        ByteBuffer header = readHeader(channel);
+        if(header.limit() < 2) {
+            return false;
+        }
+        int cmf = header.get(0) & 0xff;
+        int flg = header.get(1) & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while(header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * The offsets where a gzip member header could start: the gzip magic, the deflate method and no reserved flag.
+     *
+     * The file is scanned as the members are needed, a window of members ahead of the delivery, so the compressed
+     * data is read by the scan shortly before the member decompressing it reads it again, while it is still in the
+     * page cache, and the decompression starts without waiting for a scan of the whole file.
+     */
+    static class MemberCandidates {
+        private final FileChannel channel;
+        private final Long size;
+        private final ByteBuffer buffer;
+        private long[] offsets;
+        private Integer count;
+        private Long position;
+        private Boolean eof;
+
+        MemberCandidates(FileChannel channel, Long size, Boolean zlib) {
+            this.channel = channel;
+            this.size = size;
+            this.buffer = zlib ? null : ByteBuffer.allocate(Configuration.READ_BUFFER_SIZE);
+            this.offsets = new long[16];
+            this.count = zlib ? 1 : 0;
+            this.position = 0L;
+            this.eof = zlib;
+        }
+
+        /**
+         * Returns the offset of a candidate, or null if the file has fewer candidates.
+         *
+         * @param index
+         * @return
+         * @throws IOException
+         */
+        Long get(Integer index) throws IOException {
+            while(this.count <= index && !this.eof) {
+                scan();
+            }
+            return index < this.count ? this.offsets[index] : null;
+        }
+
+        /**
+         * Returns the index of the candidate at the offset, or a negative number if there is none.
+         *
+         * @param offset
+         * @return
+         * @throws IOException
+         */
+        Integer indexOf(Long offset) throws IOException {
+            while(this.position <= offset && !this.eof) {
+                scan();
+            }
+            return Arrays.binarySearch(this.offsets, 0, this.count, offset);
+        }
+
+        private void scan() throws IOException {
+            ByteBuffer buffer = this.buffer;
+            buffer.clear();
+            while(buffer.hasRemaining() && this.channel.read(buffer, this.position + buffer.position()) > 0) {
+            }
+            int limit = buffer.position();
+            this.eof = this.position + limit >= this.size || limit < buffer.capacity();
+            /*
+             * The header bytes must be in the buffer, the last ones are checked with the next read
+             */
+            int last = this.eof ? limit : limit - 3;
+            for(int i = ByteScanner.indexOf(buffer, (byte) 0x1f, 0, last); i >= 0;
+                i = i + 1 < last ? ByteScanner.indexOf(buffer, (byte) 0x1f, i + 1, last) : -1) {
+                if(i + 4 <= limit && (buffer.get(i + 1) & 0xff) == 0x8b && buffer.get(i + 2) == 8 &&
+                        (buffer.get(i + 3) & 0xe0) == 0) {
+                    if(this.count == this.offsets.length) {
+                        this.offsets = Arrays.copyOf(this.offsets, this.count * 2);
+                    }
+                    this.offsets[this.count++] = this.position + i;
+                }
+            }
+            this.position += this.eof ? limit : last;
+        }
+    }
+
+    /**
+     * Delivers the matches of the members chained from the start of the file, in order.
+     */
+    private static class Delivery {
+        private final File file;
+        private final TextMatcher matcher;
+        private final Consumer<SearchMatch> consumer;
+        private final Long maxMatches;
+        private final AtomicBoolean stop;
+        private final List<ChunkStatistics> chunks;
+        private final ByteArrayOutputStream carry;
+        private Long carryOffset;
+        private Long base;
+        private Long delivered;
+
+        Delivery(File file, TextMatcher matcher, Consumer<SearchMatch> consumer, Long maxMatches,
+                 AtomicBoolean stop) {
+            this.file = file;
+            this.matcher = matcher;
+            this.consumer = consumer;
+            this.maxMatches = maxMatches;
+            this.stop = stop;
+            this.chunks = new ArrayList<>();
+            this.carry = new ByteArrayOutputStream();
+            this.carryOffset = 0L;
+            this.base = 0L;
+            this.delivered = 0L;
+        }
+
+        /**
+         * Delivers the matches of the member and returns the offset where the next member starts.
+         *
+         * @param member
+         * @return
+         * @throws IOException
+         */
+        Long deliver(Member member) throws IOException {
+            while(true) {
+                Block block = member.next(this.stop);
+                if(block == null) {
+                    return -1L;
+                }
+                if(HEAD.equals(block.type)) {
+                    /*
+                     * The start of the member completes the line left by the previous one
+                     */
+                    if(this.carry.size() == 0) {
+                        this.carryOffset = this.base;
+                    }
+                    this.carry.write(block.bytes, 0, block.bytes.length);
+                    if(block.eol) {
+                        flush();
+                    }
+                } else if(SCAN.equals(block.type)) {
+                    this.chunks.addAll(SearchScheduler.get(block.search, this.stop));
+                    for(SearchMatch searchMatch : block.matches) {
+                        deliver(new SearchMatch(this.file, this.base + searchMatch.getOffset(), searchMatch.getLine(),
+                                searchMatch.getPatterns()));
+                    }
+                } else {
+                    if(block.error != null) {
+                        throw block.error;
+                    }
+                    if(this.carry.size() == 0) {
+                        this.carryOffset = this.base + block.size - block.bytes.length;
+                    }
+                    this.carry.write(block.bytes, 0, block.bytes.length);
+                    this.base += block.size;
+                    return block.end;
+                }
+            }
+        }
+
+        /**
+         * Scans the line rebuilt from the end of a member and the start of the next one, or the last line of the
+         * file.
+         */
+        void flush() {
+            if(this.carry.size() > 0 && !this.stop.get()) {
+                byte[] line = this.carry.toByteArray();
+                LineScanner.scan(ByteBuffer.wrap(line), 0, line.length, this.matcher,
+                        (b, lineStart, lineEnd, position) -> {
+                            deliver(ConcurrentFileTextSearch.searchMatch(this.file, this.matcher, b, lineStart,
+                                    lineEnd, this.carryOffset + position));
+                            return !this.stop.get();
+                        });
+            }
+            this.carry.reset();
+        }
+
+        private void deliver(SearchMatch searchMatch) {
+            if(this.stop.get()) {
+                return;
+            }
+            this.consumer.accept(searchMatch);
+            this.delivered++;
+            if(isLimitReached()) {
+                this.stop.set(true);
+            }
+        }
+
+        Boolean isLimitReached() {
+            return this.maxMatches != null && this.maxMatches > 0 && this.delivered >= this.maxMatches;
+        }
+    }
+
+    /**
+     * Output of a member: its first partial line, a scanned buffer or its end.
+     */
+    private static class Block {
+        private final Integer type;
+        private final ForkJoinTask<List<ChunkStatistics>> search;
+        private final List<SearchMatch> matches;
+        private final byte[] bytes;
+        private final Boolean eol;
+        private final Long size;
+        private final Long end;
+        private final IOException error;
+
+        private Block(Integer type, ForkJoinTask<List<ChunkStatistics>> search, List<SearchMatch> matches,
+                      byte[] bytes, Boolean eol, Long size, Long end, IOException error) {
+            this.type = type;
+            this.search = search;
+            this.matches = matches;
+            this.bytes = bytes;
+            this.eol = eol;
+            this.size = size;
+            this.end = end;
+            this.error = error;
+        }
+
+        static Block head(byte[] bytes, Boolean eol) {
+            return new Block(HEAD, null, null, bytes, eol, null, null, null);
+        }
+
+        static Block scan(ForkJoinTask<List<ChunkStatistics>> search, List<SearchMatch> matches) {
+            return new Block(SCAN, search, matches, null, null, null, null, null);
+        }
+
+        static Block end(byte[] tail, Long size, Long end, IOException error) {
+            return new Block(END, null, null, tail, null, size, end, error);
+        }
+    }
+
+    /**
+     * Decompresses a member starting at a candidate offset, submitting every decompressed buffer to the search
+     * threads. The offsets are relative to the start of the member.
+     */
+    private static class Member implements Runnable {
+        private final File file;
+        private final FileChannel channel;
+        private final Long offset;
+        private final Boolean zlib;
+        private final TextMatcher matcher;
+        private final BufferRing ring;
+        private final AtomicBoolean stop;
+        private final BlockingQueue<Block> blocks;
+        private final byte[] input;
+        private Long inputPosition;
+        private Integer inputOffset;
+        private Integer inputLimit;
+        private ByteBuffer buffer;
+        private Integer length;
+        private Long bufferOffset;
+        private ByteArrayOutputStream head;
+        private byte[] tail;
+        private CRC32 crc;
+
+        Member(File file, FileChannel channel, Long offset, Boolean zlib, TextMatcher matcher, BufferRing ring,
+               AtomicBoolean stop) {
+            this.file = file;
+            this.channel = channel;
+            this.offset = offset;
+            this.zlib = zlib;
+            this.matcher = matcher;
+            this.ring = ring;
+            this.stop = stop;
+            this.blocks = new LinkedBlockingQueue<>();
+            this.input = new byte[65536];
+            this.inputPosition = offset;
+            this.inputOffset = 0;
+            this.inputLimit = 0;
+            this.bufferOffset = 0L;
+            this.length = 0;
+            /*
+             * The first member starts with a complete line
+             */
+            this.head = offset == 0L ? null : new ByteArrayOutputStream();
+            this.tail = new byte[0];
+            this.crc = new CRC32();
+        }
+
+        Block next(AtomicBoolean stop) throws IOException {
+            try {
+                while(!stop.get()) {
+                    Block block = this.blocks.poll(10, TimeUnit.MILLISECONDS);
+                    if(block != null) {
+                        return block;
+                    }
+                }
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("search interrupted");
+            }
+        }
+
+        @Override
+        public void run() {
+            IOException error = null;
+            Inflater inflater = new Inflater(!this.zlib);
+            try {
+                if(!this.zlib) {
+                    readHeader();
+                }
+                if(inflate(inflater) && !this.zlib) {
+                    readTrailer();
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            } finally {
+                inflater.end();
+            }
+            this.blocks.offer(Block.end(this.tail, this.bufferOffset,
+                    this.inputPosition - this.inputLimit + this.inputOffset, error));
+        }
+
+        /**
+         * Decompresses the member, keeping its last partial line.
+         *
+         * @param inflater
+         * @return false if the search was stopped
+         * @throws IOException
+         */
+        private boolean inflate(Inflater inflater) throws IOException {
+            this.buffer = this.ring.take(this.stop);
+            if(this.buffer == null) {
+                return false;
+            }
+            try {
+                while(!inflater.finished()) {
+                    if(this.stop.get()) {
+                        return false;
+                    }
+                    if(inflater.needsInput()) {
+                        if(this.inputOffset.equals(this.inputLimit) && !fill()) {
+                            throw new EOFException("unexpected end of the member at offset " + this.offset);
+                        }
+                        inflater.setInput(this.input, this.inputOffset, this.inputLimit - this.inputOffset);
+                        this.inputOffset = this.inputLimit;
+                    }
+                    if(inflater.needsDictionary()) {
+                        throw new IOException("preset dictionaries are not supported");
+                    }
+                    int n = inflater.inflate(this.buffer.array(), this.length, this.buffer.capacity() - this.length);
+                    if(!this.zlib) {
+                        this.crc.update(this.buffer.array(), this.length, n);
+                    }
+                    this.length += n;
+                    if(this.length == this.buffer.capacity() && !emit(false)) {
+                        return false;
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("invalid deflate data in the member at offset " + this.offset, e);
+            }
+            this.inputOffset = this.inputLimit - inflater.getRemaining();
+            return emit(true);
+        }
+
+        /**
+         * Submits the complete lines of the buffer to the search threads and moves the partial line at the end to
+         * the next buffer.
+         *
+         * @param last
+         * @return false if the search was stopped
+         * @throws IOException
+         */
+        private boolean emit(boolean last) throws IOException {
+            int from = 0;
+            if(this.head != null) {
+                int eol = LineScanner.indexOfEOL(this.buffer, 0, this.length);
+                if(eol < 0) {
+                    this.head.write(this.buffer.array(), 0, this.length);
+                    this.bufferOffset += this.length;
+                    this.length = 0;
+                    if(last) {
+                        this.ring.release(this.buffer);
+                        this.blocks.offer(Block.head(this.head.toByteArray(), false));
+                    }
+                    return true;
+                }
+                this.head.write(this.buffer.array(), 0, eol + 1);
+                this.blocks.offer(Block.head(this.head.toByteArray(), true));
+                this.head = null;
+                from = eol + 1;
+            }
+
+            int usable = LineScanner.lastIndexOfEOL(this.buffer, from, this.length) + 1;
+            if(usable == from && !last) {
+                /*
+                 * No complete line in the rest of the buffer
+                 */
+                if(from > 0) {
+                    System.arraycopy(this.buffer.array(), from, this.buffer.array(), 0, this.length - from);
+                } else {
+                    ByteBuffer bigger = ByteBuffer.allocate(this.buffer.capacity() * 2);
+                    System.arraycopy(this.buffer.array(), 0, bigger.array(), 0, this.length);
+                    this.ring.release(this.buffer);
+                    this.buffer = bigger;
+                }
+                this.bufferOffset += from;
+                this.length -= from;
+                return true;
+            }
+
+            ByteBuffer next = null;
+            if(!last) {
+                next = this.ring.take(this.stop);
+                if(next == null) {
+                    return false;
+                }
+                if(this.length - usable >= next.capacity()) {
+                    /*
+                     * The partial line comes from a grown buffer and does not fit in a ring buffer
+                     */
+                    this.ring.release(next);
+                    next = ByteBuffer.allocate((this.length - usable) * 2);
+                }
+                System.arraycopy(this.buffer.array(), usable, next.array(), 0, this.length - usable);
+            } else {
+                this.tail = Arrays.copyOfRange(this.buffer.array(), usable, this.length);
+            }
+            if(usable > from) {
+                submit(this.buffer, from, usable, this.bufferOffset);
+            } else {
+                this.ring.release(this.buffer);
+            }
+            this.bufferOffset += last ? this.length : usable;
+            this.length = last ? 0 : this.length - usable;
+            this.buffer = next;
+            return true;
+        }
+
+        private void submit(ByteBuffer scanned, int from, int to, long base) {
+            List<SearchMatch> matches = new ArrayList<>();
+            ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(new long[] { base + from },
+                    new long[] { base + to }, (chunk, start, end) -> {
+                        try {
+                            ByteBuffer view = scanned.duplicate();
+                            view.position(from);
+                            view.limit(to);
+                            LineScanner.scan(view.slice(), 0, to - from, this.matcher,
+                                    (b, lineStart, lineEnd, position) -> {
+                                        matches.add(ConcurrentFileTextSearch.searchMatch(this.file, this.matcher,
+                                                b, lineStart, lineEnd, start + position));
+                                        return !this.stop.get();
+                                    });
+                            return Long.valueOf(matches.size());
+                        } finally {
+                            this.ring.release(scanned);
+                        }
+                    }, this.stop);
+            this.blocks.offer(Block.scan(search, Collections.unmodifiableList(matches)));
+        }
+
+        private boolean fill() throws IOException {
+            ByteBuffer b = ByteBuffer.wrap(this.input);
+            int n = this.channel.read(b, this.inputPosition);
+            if(n <= 0) {
+                return false;
+            }
+            this.inputPosition += n;
+            this.inputOffset = 0;
+            this.inputLimit = n;
+            return true;
+        }
+
+        private int read() throws IOException {
+            if(this.inputOffset.equals(this.inputLimit) && !fill()) {
+                throw new EOFException("unexpected end of the member at offset " + this.offset);
+            }
+            return this.input[this.inputOffset++] & 0xff;
+        }
+
+        private void skip(int n) throws IOException {
+            for(int i = 0; i < n; i++) {
+                read();
+            }
+        }
+
+        private void readHeader() throws IOException {
+            if(read() != 0x1f || read() != 0x8b || read() != 8) {
+                throw new IOException("invalid gzip header at offset " + this.offset);
+            }
+            int flags = read();
+            if((flags & 0xe0) != 0) {
+                throw new IOException("invalid gzip header flags at offset " + this.offset);
+            }
+            /*
+             * Modification time, extra flags and operating system
+             */
+            skip(6);
+            if((flags & 4) != 0) {
+                skip(read() | read() << 8);
+            }
+            if((flags & 8) != 0) {
+                while(read() != 0) {
+                }
+            }
+            if((flags & 16) != 0) {
+                while(read() != 0) {
+                }
+            }
+            if((flags & 2) != 0) {
+                skip(2);
+            }
+        }
+
+        private void readTrailer() throws IOException {
+            long crc = read() | read() << 8 | read() << 16 | (long) read() << 24;
+            long size = read() | read() << 8 | read() << 16 | (long) read() << 24;
+            if(crc != this.crc.getValue() || size != (this.bufferOffset & 0xffffffffL)) {
+                throw new IOException("invalid gzip trailer of the member at offset " + this.offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+import io.MappingCache;
+import io.MemoryMappedFileRead;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Searches many files at once, such as a directory of rotated logs.
+ *
+ * The work is divided by bytes rather than by files. The files are laid out one after the other as if they
+ * were a single file and that space is divided in chunks by {@link SearchScheduler}. This way a big file is
+ * split in many chunks while many small files are searched within a single chunk, and all the files share the
+ * same pool of threads whatever their number is.
+ *
+ * Every match is tagged with its file and the file offset of the line.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ConcurrentDirectoryTextSearch {
+
+    /**
+     * Searches a text in all the files of the directory, and its subdirectories, matching the glob
+     * (for example <code>*.log</code>).
+     *
+     * @param directory
+     * @param glob
+     * @param match
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final File directory, final String glob, final String match)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(directory, glob, new BoyerMooreHorspoolMatcher(match), matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches all the files of the directory, and its subdirectories, matching the glob. A glob containing
+     * a path separator is matched against the path relative to the directory, otherwise against the file name.
+     *
+     * @param directory
+     * @param glob
+     * @param matcher
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final File directory, final String glob, final TextMatcher matcher,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        return search(listFiles(directory, glob), matcher, consumer, maxMatches);
+    }
+
+    /**
+     * Searches a list of files, pushing every match to the consumer as soon as it is found.
+     *
+     * @param files
+     * @param matcher
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final List<File> files, final TextMatcher matcher,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        BlockingQueue<SearchMatch> queue = new ArrayBlockingQueue<>(Configuration.SEARCH_QUEUE_CAPACITY);
+        AtomicBoolean stop = new AtomicBoolean(false);
+
+        /*
+         * Offset of every file within the whole data. Empty files are left out.
+         */
+        List<File> searchFiles = files.stream().filter(f -> f.length() > 0).collect(Collectors.toList());
+        long[] fileOffsets = new long[searchFiles.size() + 1];
+        for(Integer n = 0; n < searchFiles.size(); n++) {
+            fileOffsets[n + 1] = fileOffsets[n] + searchFiles.get(n).length();
+        }
+        Long totalBytes = fileOffsets[searchFiles.size()];
+        MappingCache.Lease[] mappings = new MappingCache.Lease[searchFiles.size()];
+
+        ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(totalBytes,
+                SearchScheduler.chunkSize(totalBytes, Configuration.SEARCH_THREADS), (chunk, start, end) -> {
+                    Long[] produced = { 0L };
+                    Integer n = fileIndex(fileOffsets, start);
+                    for(; n < searchFiles.size() && fileOffsets[n] < end && !stop.get(); n++) {
+                        File f = searchFiles.get(n);
+                        MemoryMappedFileRead mMapRead = mapping(mappings, n, f);
+                        /*
+                         * The part of the chunk within this file
+                         */
+                        Long fileStart = Math.max(start, fileOffsets[n]) - fileOffsets[n];
+                        Long fileEnd = Math.min(end, fileOffsets[n + 1]) - fileOffsets[n];
+                        ConcurrentFileTextSearch.scanLocked(lock, mMapRead, matcher, fileStart, fileEnd,
+                                (b, lineStart, lineEnd, position) -> {
+                                    SearchMatch searchMatch = ConcurrentFileTextSearch.searchMatch(f, matcher, b,
+                                            lineStart, lineEnd, position);
+                                    if(ConcurrentFileTextSearch.offer(queue, searchMatch, stop)) {
+                                        produced[0]++;
+                                        return true;
+                                    }
+                                    return false;
+                                });
+                    }
+                    return produced[0];
+                }, stop);
+
+        try {
+            return ConcurrentFileTextSearch.record(ConcurrentFileTextSearch.deliver(search, queue, stop, consumer,
+                    maxMatches, totalBytes, startTime));
+        } finally {
+            release(mappings);
+        }
+    }
+
+    /**
+     * Returns the files containing at least one match, like <code>grep -l</code>. The scan of a file stops at its
+     * first match and no line is built.
+     *
+     * @param files
+     * @param matcher
+     * @return
+     * @throws IOException
+     */
+    public static List<File> filesWithMatches(final List<File> files, final TextMatcher matcher)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        List<File> searchFiles = files.stream().filter(f -> f.length() > 0).collect(Collectors.toList());
+        long[] fileOffsets = new long[searchFiles.size() + 1];
+        for(Integer n = 0; n < searchFiles.size(); n++) {
+            fileOffsets[n + 1] = fileOffsets[n] + searchFiles.get(n).length();
+        }
+        Long totalBytes = fileOffsets[searchFiles.size()];
+        MappingCache.Lease[] mappings = new MappingCache.Lease[searchFiles.size()];
+        AtomicIntegerArray found = new AtomicIntegerArray(searchFiles.size());
+        List<ChunkStatistics> chunks;
+
+        try {
+            chunks = SearchScheduler.invoke(totalBytes, SearchScheduler.chunkSize(totalBytes, Configuration.SEARCH_THREADS),
+                    (chunk, start, end) -> {
+                        Long matches = 0L;
+                        Integer n = fileIndex(fileOffsets, start);
+                        for(; n < searchFiles.size() && fileOffsets[n] < end; n++) {
+                            if(found.get(n) != 0) {
+                                /*
+                                 * Another chunk already found this file
+                                 */
+                                continue;
+                            }
+                            Integer file = n;
+                            MemoryMappedFileRead mMapRead = mapping(mappings, n, searchFiles.get(n));
+                            Long fileStart = Math.max(start, fileOffsets[n]) - fileOffsets[n];
+                            Long fileEnd = Math.min(end, fileOffsets[n + 1]) - fileOffsets[n];
+                            ConcurrentFileTextSearch.scanLocked(lock, mMapRead, matcher, fileStart, fileEnd,
+                                    (b, lineStart, lineEnd, position) -> {
+                                        found.set(file, 1);
+                                        return false;
+                                    });
+                            matches += found.get(n);
+                        }
+                        return matches;
+                    }, new AtomicBoolean(false));
+        } finally {
+            release(mappings);
+        }
+
+        List<File> result = new ArrayList<>();
+        for(Integer n = 0; n < searchFiles.size(); n++) {
+            if(found.get(n) != 0) {
+                result.add(searchFiles.get(n));
+            }
+        }
+        ConcurrentFileTextSearch.record(new SearchStatistics(Long.valueOf(result.size()), totalBytes,
+                System.nanoTime() - startTime, false, chunks));
+        return result;
+    }
+
+    /**
+     * Lists the regular files of the directory, and its subdirectories, matching the glob.
+     *
+     * @param directory
+     * @param glob
+     * @return
+     * @throws IOException
+     */
+    public static List<File> listFiles(final File directory, final String glob) throws IOException {
+        if(directory == null || !directory.isDirectory()) {
+            throw new IOException("directory not found");
+        }
+        Path root = directory.toPath();
+        PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + (glob == null ? "*" : glob));
+        Boolean relative = glob != null && glob.contains("/");
+
+        try(Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> pathMatcher.matches(relative ? root.relativize(p) : p.getFileName()))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the index of the file containing the offset.
+     *
+     * @param fileOffsets
+     * @param offset
+     * @return
+     */
+    private static Integer fileIndex(long[] fileOffsets, Long offset) {
+        Integer n = Arrays.binarySearch(fileOffsets, 0, fileOffsets.length - 1, offset);
+        if(n < 0) {
+            n = -n - 2;
+        }
+        /*
+         * Several files can share the same offset only if they are empty, which are left out
+         */
+        return Math.max(0, n);
+    }
+
+    /**
+     * Maps the file the first time any chunk needs it, or takes it from the mapping cache.
+     *
+     * @param mappings
+     * @param n
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    private static MemoryMappedFileRead mapping(MappingCache.Lease[] mappings, Integer n, File f)
+            throws IOException {
+        synchronized(mappings) {
+            if(mappings[n] == null) {
+                mappings[n] = MappingCache.getInstance().acquire(f);
+            }
+            return mappings[n].getMemoryMappedFileRead();
+        }
+    }
+
+    /**
+     * Releases the mappings used by the search, once all the chunks are done.
+     *
+     * @param mappings
+     */
+    private static void release(MappingCache.Lease[] mappings) {
+        synchronized(mappings) {
+            for(MappingCache.Lease lease : mappings) {
+                if(lease != null) {
+                    lease.close();
+                }
+            }
+        }
+    }
+}
@@ -16,25 +16,40 @@
  */
 package file;
 
+import conf.Configuration;
+import io.LineIndex;
+import io.MappingCache;
 import io.MemoryMappedFileRead;
+import io.MemoryMappedReadBackend;
+import io.PageStatistics;
+import io.ReadBackend;
+import io.TrigramIndex;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.AbstractMap;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
- * It spawns multiple threads for examining different data regions within the file.
+ * It uses multiple threads for examining different data regions within the file. The file is divided in
+ * small chunks which are scheduled over a shared pool of threads (see {@link SearchScheduler}).
  *
  * Reads the file from memory by mapping it into the resident memory using
  * <a href="http://man7.org/linux/man-pages/man2/mmap.2.html">mmap system call<a/>.
@@ -44,29 +59,46 @@ import java.util.stream.IntStream;
  * When no resident memory is available or the OS require to free some memory, pages can be evicted
  * by selecting them using the LRU (last recent use) mechanism.
  *
+ * Files bigger than 2G are mapped in several segments and the data regions use file offsets, so a
+ * region can span any number of segments.
+ *
  * Because different threads will access concurrently different areas of the file, I expect the
  * application will perform random reads mostly.
  *
  * Because no writes will be performed, I do not expected any dirty pages that require to be flushed to the disk.
  *
- * You can verify the resident memory size within the /proc/[pid]/smaps file.
+ * Each thread scans the bytes of its chunks directly with a {@link TextMatcher}. Lines are only located and
+ * copied out of the buffer when they contain a match, so the lines without matches do not produce any garbage.
+ * The matching lines are decoded as UTF-8 (see {@link LineDecoder}).
+ *
+ * You can verify the resident memory size within the /proc/[pid]/smaps file. The statistics of the streaming
+ * searches can include it, together with the page faults (see {@link PageStatistics}), when they are enabled in
+ * the {@link SearchMonitor}. They are also published through JMX.
  *
  * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
  */
 public class ConcurrentFileTextSearch {
+    /*
+     * Result modes, from the most expensive to the cheapest one. Only the lines mode builds strings.
+     */
+    public static final Integer RESULT_LINES = 1;
+    public static final Integer RESULT_OFFSETS = 2;
+    public static final Integer RESULT_COUNT = 3;
+    public static final Integer RESULT_EXISTS = 4;
 
     /**
      * Performs the search over the file by deviding the memory data regions and assign them to
      * the threads.
      *
+     * The threads come from the shared search pool. The threads argument is the minimum number of chunks
+     * the file is divided in, so smaller files are still searched in parallel.
+     *
      * @param f
      * @param match
      * @param threads
      * @throws IOException
      */
     public static List<String> search(final File f, final String match, final Integer threads) throws IOException {
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
-
         /**
          * Defining a readWrite lock.
          *
@@ -76,78 +108,878 @@ public class ConcurrentFileTextSearch {
          * in to the disk and this could not succeed if the process is aborted abnormally.
          *
          */
+        Long startTime = System.nanoTime();
         ReadWriteLock lock = new ReentrantReadWriteLock();
-        MemoryMappedFileRead mMapRead = new MemoryMappedFileRead(f);
-        List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>();
+        try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+            MemoryMappedFileRead mMapRead = lease.getMemoryMappedFileRead();
+            TextMatcher matcher = new BoyerMooreHorspoolMatcher(match);
 
-        /**
-         * Defining data regions within the file for each thread
-         */
-        Integer threadOffsetLimit = Double.valueOf(Math.floor(mMapRead.getOffsetLimit() / (threads))).intValue();
-        IntStream.range(0, threads).forEach((n) -> {
-            tasks.add(searchTask(mMapRead, lock, match, Integer.valueOf(threadOffsetLimit * n),
-                    Integer.valueOf(threadOffsetLimit * (n + 1))));
-        });
+            /**
+             * Defining data chunks within the file. Every chunk keeps its own lines, so they can be merged
+             * in the file order.
+             */
+            Long chunkSize = SearchScheduler.chunkSize(mMapRead.getOffsetLimit(), threads);
+            List<List<String>> chunkLines = new ArrayList<>();
+            for(Integer n = 0; n < SearchScheduler.chunkCount(mMapRead.getOffsetLimit(), chunkSize); n++) {
+                chunkLines.add(new ArrayList<String>());
+            }
 
-        List<String> resultLines = new ArrayList<String>();
-        try {
-            executor.invokeAll(tasks)
-                    .stream()
-                    .map(future -> {
-                        try {
-                            return future.get();
-                        } catch (Exception e) {
-                            throw new IllegalStateException(e);
-                        }
-                    })
-                    .filter(list -> !list.isEmpty())
-                    .forEach(list -> {
-                        resultLines.addAll(list);
-                    });
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            List<ChunkStatistics> chunks = SearchScheduler.invoke(mMapRead.getOffsetLimit(), chunkSize,
+                    (chunk, start, end) -> {
+                        List<String> lines = chunkLines.get(chunk);
+                        scanLocked(lock, mMapRead, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                            lines.add(LineDecoder.decode(b, lineStart, lineEnd));
+                            return true;
+                        });
+                        return Long.valueOf(lines.size());
+                    }, new AtomicBoolean(false));
+
+            List<String> resultLines = new ArrayList<String>();
+            chunkLines.forEach(resultLines::addAll);
+            record(new SearchStatistics(Long.valueOf(resultLines.size()), mMapRead.getOffsetLimit(),
+                    System.nanoTime() - startTime, false, chunks));
+            return resultLines;
         }
-        executor.shutdown();
+    }
+
+    /**
+     * Performs the search over the file and pushes every match to the consumer as soon as it is found,
+     * instead of collecting all of them.
+     *
+     * The consumer is called from the calling thread. The search threads put the matches into a bounded
+     * queue and wait when it is full, so a slow consumer slows down the search rather than making the
+     * pending matches grow without limit.
+     *
+     * Once maxMatches matches have been delivered the remaining tasks are cancelled. A null or non positive
+     * maxMatches delivers all of them.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final File f, final String match, final Integer threads,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        return search(f, new BoyerMooreHorspoolMatcher(match), threads, consumer, maxMatches);
+    }
 
-        return resultLines;
+    /**
+     * Searches several patterns at once. The file is scanned a single time whatever the number of patterns
+     * is, and every match reports the patterns found in the line.
+     *
+     * @param f
+     * @param patterns
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final File f, final List<String> patterns, final Integer threads)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(f, new AhoCorasickMatcher(patterns), threads, matches::add, null);
+        return matches;
     }
 
-    private static Callable searchTask(MemoryMappedFileRead mMapRead, ReadWriteLock lock, final String s,
-                                       final Integer offset, final Integer offsetLimit) {
-        Callable<List<String>> task = () -> {
-            List<String> lines = new ArrayList<>();
-            /**
-             * Getting the read lock.
-             */
-            Lock l = lock.readLock();
-            Map.Entry<Integer, String> line = new AbstractMap.SimpleEntry<Integer, String>(offset, null);
-            while(true) {
-                if(line.getKey() >= offsetLimit) {
-                    break;
-                }
+    /**
+     * Searches a text ignoring the case. The case variants are matched over the raw UTF-8 bytes (see
+     * {@link CaseInsensitiveMatcher}), so only the matching lines are decoded.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> searchIgnoreCase(final File f, final String match, final Integer threads)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(f, new CaseInsensitiveMatcher(match), threads, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the lines containing the text with up to maxEdits edits, like <code>agrep -k</code>. The lines
+     * are matched with a bit-parallel scan over the raw bytes (see {@link ApproximateMatcher}).
+     *
+     * @param f
+     * @param match
+     * @param maxEdits
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> searchApproximate(final File f, final String match, final Integer maxEdits,
+                                                      final Integer threads) throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(f, new ApproximateMatcher(match, maxEdits), threads, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the lines matching a regular expression. The literals required by the expression are used
+     * to select the candidate lines with a byte scan, so the expression only runs over those lines.
+     *
+     * @param f
+     * @param pattern
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final File f, final Pattern pattern, final Integer threads)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        search(f, new RegexMatcher(pattern), threads, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Performs the search over the file with any matcher, pushing every match to the consumer as soon as
+     * it is found. A gzip file is searched decompressing it (see {@link CompressedFileTextSearch}).
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final File f, final TextMatcher matcher, final Integer threads,
+                                          final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        if(CompressedFileTextSearch.isGzip(f)) {
+            return CompressedFileTextSearch.search(f, matcher, threads, consumer, maxMatches);
+        }
+        return search(f, matcher, threads, ReadBackend.MMAP, consumer, maxMatches);
+    }
+
+    /**
+     * Performs the search reading the file with one of the read backends (see {@link ReadBackend}), pushing
+     * every match to the consumer as soon as it is found.
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param backend
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics search(final File f, final TextMatcher matcher, final Integer threads,
+                                          final Integer backend, final Consumer<SearchMatch> consumer,
+                                          final Long maxMatches) throws IOException {
+        Long startTime = System.nanoTime();
+        Boolean pageStatistics = SearchMonitor.getInstance().getPageStatisticsEnabled();
+        PageStatistics startPages = pageStatistics ? PageStatistics.faults() : null;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        BlockingQueue<SearchMatch> queue = new ArrayBlockingQueue<>(Configuration.SEARCH_QUEUE_CAPACITY);
+        AtomicBoolean stop = new AtomicBoolean(false);
+
+        try(ReadBackend readBackend = ReadBackend.open(backend, f)) {
+            Long chunkSize = SearchScheduler.chunkSize(readBackend.getOffsetLimit(), threads);
+            ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(readBackend.getOffsetLimit(),
+                    chunkSize, (chunk, start, end) -> {
+                        Long[] produced = { 0L };
+                        scanLocked(lock, readBackend, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                            if(offer(queue, searchMatch(f, matcher, b, lineStart, lineEnd, position), stop)) {
+                                produced[0]++;
+                                return true;
+                            }
+                            return false;
+                        });
+                        return produced[0];
+                    }, stop);
+
+            SearchStatistics statistics = deliver(search, queue, stop, consumer, maxMatches,
+                    readBackend.getOffsetLimit(), startTime);
+
+            if(pageStatistics) {
                 /*
-                 * Acquiring the read lock
+                 * The residency is read while the file is still mapped
                  */
-                if(!l.tryLock(1, TimeUnit.SECONDS)) {
-                    throw new IOException("cannot acquire a read lock");
+                PageStatistics pages = ReadBackend.MMAP.equals(backend) ? PageStatistics.of(f) :
+                        PageStatistics.faults();
+                statistics = statistics.withPageStatistics(pages.since(startPages));
+            }
+            return record(statistics);
+        }
+    }
+
+    /**
+     * Searches the text and returns the matching lines with up to before lines of context before them and up to
+     * after lines after them, like <code>grep -B -A</code>, in the file order.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @param before
+     * @param after
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> search(final File f, final String match, final Integer threads,
+                                           final Integer before, final Integer after) throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        searchOrdered(f, new BoyerMooreHorspoolMatcher(match), threads, before, after, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Performs the search and pushes the matches, with their context lines, to the consumer in the file order.
+     *
+     * The context lines are sliced out of the mapped file around every match, so they can belong to a different
+     * chunk than the match. The consumer receives every line once: the context shared by close matches is only
+     * attached to the first one, and the lines which are matches themselves are not repeated as context.
+     *
+     * The chunks are searched in batches. The next batch is searched while the matches of the current one are
+     * delivered, so only the matches of two batches are kept in memory at any time.
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param before
+     * @param after
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics searchOrdered(final File f, final TextMatcher matcher, final Integer threads,
+                                                 final Integer before, final Integer after,
+                                                 final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+            MemoryMappedFileRead mMapRead = lease.getMemoryMappedFileRead();
+            AtomicBoolean stop = new AtomicBoolean(false);
+
+            Long size = mMapRead.getOffsetLimit();
+            Long chunkSize = SearchScheduler.chunkSize(size, threads);
+            Integer count = SearchScheduler.chunkCount(size, chunkSize);
+            Integer batchSize = Configuration.SEARCH_THREADS * 2;
+            ContextMerge merge = new ContextMerge(consumer, maxMatches, stop);
+            List<ChunkStatistics> chunks = new ArrayList<>();
+
+            Batch next = submitBatch(f, lock, mMapRead, matcher, before, after, chunkSize, count, 0, batchSize, stop);
+            try {
+                for(Integer first = 0; first < count && !stop.get(); first += batchSize) {
+                    Batch current = next;
+                    if(first + batchSize < count) {
+                        next = submitBatch(f, lock, mMapRead, matcher, before, after, chunkSize, count,
+                                first + batchSize, batchSize, stop);
+                    }
+                    chunks.addAll(SearchScheduler.get(current.search, stop));
+                    for(List<SearchMatch> chunkMatches : current.matches) {
+                        chunkMatches.forEach(merge::add);
+                    }
                 }
+                merge.flush();
+            } finally {
                 /*
-                 * Reading a line from the specific offset from the MMAP buffer.
+                 * The batch submitted ahead is done before the mapping is released
                  */
-                line = mMapRead.readLine(line.getKey());
+                stop.set(true);
+                next.search.quietlyJoin();
+            }
+
+            return record(new SearchStatistics(merge.delivered, size, System.nanoTime() - startTime,
+                    merge.isLimitReached(), chunks));
+        }
+    }
+
+    private static Batch submitBatch(File f, ReadWriteLock lock, MemoryMappedFileRead mMapRead, TextMatcher matcher,
+                                     Integer before, Integer after, Long chunkSize, Integer count, Integer first,
+                                     Integer batchSize, AtomicBoolean stop) {
+        Integer last = Math.min(count, first + batchSize);
+        long[] starts = new long[last - first];
+        long[] ends = new long[last - first];
+        List<List<SearchMatch>> matches = new ArrayList<>();
+        for(Integer n = first; n < last; n++) {
+            starts[n - first] = n * chunkSize;
+            ends[n - first] = n == count - 1 ? mMapRead.getOffsetLimit() :
+                    Math.min(mMapRead.getOffsetLimit(), starts[n - first] + chunkSize);
+            matches.add(new ArrayList<>());
+        }
+
+        ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(starts, ends, (chunk, start, end) -> {
+            List<SearchMatch> chunkMatches = matches.get(chunk);
+            scanLocked(lock, mMapRead, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                SearchMatch searchMatch = searchMatch(f, matcher, b, lineStart, lineEnd, position);
+                chunkMatches.add(searchMatch.withContext(
+                        contextBefore(f, mMapRead, position, before),
+                        contextAfter(f, mMapRead, position + lineEnd - lineStart, after)));
+                return !stop.get();
+            });
+            return Long.valueOf(chunkMatches.size());
+        }, stop);
+        return new Batch(search, matches);
+    }
+
+    /**
+     * Returns up to count lines before the line starting at the offset.
+     *
+     * @param f
+     * @param mMapRead
+     * @param offset
+     * @param count
+     * @return
+     */
+    static List<SearchMatch> contextBefore(File f, MemoryMappedFileRead mMapRead, Long offset, Integer count) {
+        LinkedList<SearchMatch> lines = new LinkedList<>();
+        for(Long p = offset; lines.size() < count && p > 0; ) {
+            Long start = mMapRead.seekBOL(p);
+            lines.addFirst(contextLine(f, mMapRead, start, p - 1));
+            p = start;
+        }
+        return lines;
+    }
+
+    /**
+     * Returns up to count lines after the line ending at the offset (the position of its EOL).
+     *
+     * @param f
+     * @param mMapRead
+     * @param lineEnd
+     * @param count
+     * @return
+     */
+    static List<SearchMatch> contextAfter(File f, MemoryMappedFileRead mMapRead, Long lineEnd, Integer count) {
+        List<SearchMatch> lines = new ArrayList<>();
+        Long size = mMapRead.getOffsetLimit();
+        for(Long p = lineEnd < size ? lineEnd + 1 : size; lines.size() < count && p < size; ) {
+            Long end = mMapRead.seekEOL(p);
+            lines.add(contextLine(f, mMapRead, p, mMapRead.get(end - 1) == LineScanner.EOL ? end - 1 : end));
+            p = end;
+        }
+        return lines;
+    }
+
+    /**
+     * Decodes the [start, end) line straight from the mapped segment, unless it crosses the segment end.
+     *
+     * @param f
+     * @param mMapRead
+     * @param start
+     * @param end
+     * @return
+     */
+    private static SearchMatch contextLine(File f, MemoryMappedFileRead mMapRead, Long start, Long end) {
+        Integer segment = mMapRead.getSegmentIndex(start);
+        Long segmentOffset = mMapRead.getSegmentOffset(segment);
+        ByteBuffer buffer = mMapRead.getSegment(segment);
+        if(end - segmentOffset > buffer.limit()) {
+            /*
+             * A line longer than the segment overlap
+             */
+            byte[] data = new byte[(int) (end - start)];
+            for(int i = 0; i < data.length; i++) {
+                data[i] = mMapRead.get(start + i);
+            }
+            buffer = ByteBuffer.wrap(data);
+            segmentOffset = start;
+        }
+        String line = LineDecoder.decode(buffer, (int) (start - segmentOffset), (int) (end - segmentOffset));
+        return new SearchMatch(f, start, line, Collections.emptyList());
+    }
+
+    /**
+     * Search of a batch of chunks, with the matches of every chunk.
+     */
+    private static class Batch {
+        private final ForkJoinTask<List<ChunkStatistics>> search;
+        private final List<List<SearchMatch>> matches;
+
+        Batch(ForkJoinTask<List<ChunkStatistics>> search, List<List<SearchMatch>> matches) {
+            this.search = search;
+            this.matches = matches;
+        }
+    }
+
+    /**
+     * Delivers the matches in the file order, removing the context lines already delivered. A match is held
+     * until the next one arrives, so its context after can be cut where the next match starts.
+     */
+    private static class ContextMerge {
+        private final Consumer<SearchMatch> consumer;
+        private final Long maxMatches;
+        private final AtomicBoolean stop;
+        private SearchMatch pending;
+        private Long lastOffset = -1L;
+        private Long delivered = 0L;
+
+        ContextMerge(Consumer<SearchMatch> consumer, Long maxMatches, AtomicBoolean stop) {
+            this.consumer = consumer;
+            this.maxMatches = maxMatches;
+            this.stop = stop;
+        }
+
+        void add(SearchMatch searchMatch) {
+            if(isLimitReached()) {
+                return;
+            }
+            if(this.pending != null) {
+                deliver(this.pending.withContext(this.pending.getBefore(), this.pending.getAfter().stream()
+                        .filter(line -> line.getOffset() < searchMatch.getOffset())
+                        .collect(Collectors.toList())));
+                if(isLimitReached()) {
+                    return;
+                }
+            }
+            this.pending = searchMatch.withContext(searchMatch.getBefore().stream()
+                    .filter(line -> line.getOffset() > this.lastOffset)
+                    .collect(Collectors.toList()), searchMatch.getAfter());
+        }
+
+        void flush() {
+            if(this.pending != null && !isLimitReached()) {
+                deliver(this.pending);
+            }
+            this.pending = null;
+        }
+
+        Boolean isLimitReached() {
+            return this.maxMatches != null && this.maxMatches > 0 && this.delivered >= this.maxMatches;
+        }
+
+        private void deliver(SearchMatch searchMatch) {
+            this.consumer.accept(searchMatch);
+            this.delivered++;
+            List<SearchMatch> after = searchMatch.getAfter();
+            this.lastOffset = after.isEmpty() ? searchMatch.getOffset() : after.get(after.size() - 1).getOffset();
+            if(isLimitReached()) {
                 /*
-                 * Releasing the read lock
+                 * The pending chunks are skipped and the running ones stop at the next match
                  */
-                l.unlock();
-                if(line.getValue() == null) {
+                this.stop.set(true);
+            }
+        }
+    }
+
+    /**
+     * Counts the lines containing the text, without building any line.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static Long count(final File f, final String match, final Integer threads) throws IOException {
+        return search(f, new BoyerMooreHorspoolMatcher(match), threads, RESULT_COUNT).getCount();
+    }
+
+    /**
+     * Returns true if the file contains the text. All the threads stop as soon as any of them finds it.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static Boolean exists(final File f, final String match, final Integer threads) throws IOException {
+        return search(f, new BoyerMooreHorspoolMatcher(match), threads, RESULT_EXISTS).exists();
+    }
+
+    /**
+     * Returns the file offsets of the lines containing the text, in the file order.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static long[] offsets(final File f, final String match, final Integer threads) throws IOException {
+        return search(f, new BoyerMooreHorspoolMatcher(match), threads, RESULT_OFFSETS).getOffsets();
+    }
+
+    /**
+     * Performs the search in one of the result modes: {@link #RESULT_LINES}, {@link #RESULT_OFFSETS},
+     * {@link #RESULT_COUNT} or {@link #RESULT_EXISTS}.
+     *
+     * The count and exists modes are pure scans, they never copy anything out of the mapped buffers. The offsets
+     * mode only keeps a long per match.
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param mode
+     * @return
+     * @throws IOException
+     */
+    public static SearchResult search(final File f, final TextMatcher matcher, final Integer threads,
+                                      final Integer mode) throws IOException {
+        if(mode < RESULT_LINES || mode > RESULT_EXISTS) {
+            throw new IOException("invalid result mode [" + mode + "]");
+        }
+        Long startTime = System.nanoTime();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+            MemoryMappedFileRead mMapRead = lease.getMemoryMappedFileRead();
+            AtomicBoolean stop = new AtomicBoolean(false);
+
+            Long chunkSize = SearchScheduler.chunkSize(mMapRead.getOffsetLimit(), threads);
+            Integer chunkCount = SearchScheduler.chunkCount(mMapRead.getOffsetLimit(), chunkSize);
+            long[][] chunkOffsets = new long[chunkCount][];
+            List<List<SearchMatch>> chunkMatches = new ArrayList<>();
+            for(Integer n = 0; n < chunkCount; n++) {
+                chunkMatches.add(mode.equals(RESULT_LINES) ? new ArrayList<>() : null);
+            }
+
+            List<ChunkStatistics> chunks = SearchScheduler.invoke(mMapRead.getOffsetLimit(), chunkSize,
+                    (chunk, start, end) -> {
+                        long[] found = { 0L };
+                        long[][] offsets = { mode.equals(RESULT_OFFSETS) ? new long[16] : null };
+                        List<SearchMatch> matches = chunkMatches.get(chunk);
+                        scanLocked(lock, mMapRead, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                            if(mode.equals(RESULT_EXISTS)) {
+                                /*
+                                 * Any match answers the question, the rest of the threads stop
+                                 */
+                                found[0]++;
+                                stop.set(true);
+                                return false;
+                            }
+                            if(mode.equals(RESULT_OFFSETS)) {
+                                if(found[0] == offsets[0].length) {
+                                    offsets[0] = Arrays.copyOf(offsets[0], offsets[0].length * 2);
+                                }
+                                offsets[0][(int) found[0]] = position;
+                            } else if(mode.equals(RESULT_LINES)) {
+                                matches.add(searchMatch(f, matcher, b, lineStart, lineEnd, position));
+                            }
+                            found[0]++;
+                            return !stop.get();
+                        });
+                        if(offsets[0] != null) {
+                            chunkOffsets[chunk] = Arrays.copyOf(offsets[0], (int) found[0]);
+                        }
+                        return found[0];
+                    }, stop);
+
+            Long count = 0L;
+            for(ChunkStatistics chunk : chunks) {
+                count += chunk.getMatches();
+            }
+            if(mode.equals(RESULT_EXISTS)) {
+                count = Math.min(count, 1L);
+            }
+
+            long[] offsets = null;
+            if(mode.equals(RESULT_OFFSETS)) {
+                offsets = new long[count.intValue()];
+                Integer position = 0;
+                for(long[] found : chunkOffsets) {
+                    System.arraycopy(found, 0, offsets, position, found.length);
+                    position += found.length;
+                }
+            }
+            List<SearchMatch> matches = null;
+            if(mode.equals(RESULT_LINES)) {
+                matches = new ArrayList<>();
+                chunkMatches.forEach(matches::addAll);
+            }
+
+            return new SearchResult(mode, count, offsets, matches, record(new SearchStatistics(count,
+                    mMapRead.getOffsetLimit(), System.nanoTime() - startTime, false, chunks)));
+        }
+    }
+
+    /**
+     * Searches the file using its trigram index (see {@link TrigramIndex}), which is built the first time and
+     * every time the file changes. Only the blocks which can contain the literals required by the matcher
+     * are scanned, so repeated searches of rare text over big files read a small part of them.
+     *
+     * @param f
+     * @param matcher
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> searchIndexed(final File f, final TextMatcher matcher) throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        searchIndexed(f, matcher, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the candidate blocks of the trigram index, pushing every match to the consumer as soon as it
+     * is found. The bytes of the statistics are the bytes of the scanned blocks.
+     *
+     * @param f
+     * @param matcher
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics searchIndexed(final File f, final TextMatcher matcher,
+                                                 final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        TrigramIndex index = TrigramIndex.getIndex(f);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+            MemoryMappedFileRead mMapRead = lease.getMemoryMappedFileRead();
+            BlockingQueue<SearchMatch> queue = new ArrayBlockingQueue<>(Configuration.SEARCH_QUEUE_CAPACITY);
+            AtomicBoolean stop = new AtomicBoolean(false);
+
+            List<Integer> blocks = index.candidateBlocks(matcher.requiredLiterals());
+            long[] starts = new long[blocks.size()];
+            long[] ends = new long[blocks.size()];
+            Long bytes = 0L;
+            for(int n = 0; n < starts.length; n++) {
+                starts[n] = index.getBlockStart(blocks.get(n));
+                ends[n] = index.getBlockEnd(blocks.get(n));
+                bytes += ends[n] - starts[n];
+            }
+
+            ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(starts, ends,
+                    (chunk, start, end) -> {
+                        Long[] produced = { 0L };
+                        scanLocked(lock, mMapRead, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                            if(offer(queue, searchMatch(f, matcher, b, lineStart, lineEnd, position), stop)) {
+                                produced[0]++;
+                                return true;
+                            }
+                            return false;
+                        });
+                        return produced[0];
+                    }, stop);
+
+            return record(deliver(search, queue, stop, consumer, maxMatches, bytes, startTime));
+        } finally {
+            index.unmap();
+        }
+    }
+
+    /**
+     * Searches the file using its line index (see {@link LineIndex}), which is built the first time and every
+     * time the file changes. Every match reports its line number.
+     *
+     * @param f
+     * @param match
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static List<SearchMatch> searchLines(final File f, final String match, final Integer threads)
+            throws IOException {
+        List<SearchMatch> matches = new ArrayList<>();
+        searchLines(f, new BoyerMooreHorspoolMatcher(match), threads, matches::add, null);
+        return matches;
+    }
+
+    /**
+     * Searches the file dividing it in chunks with the same number of lines, instead of the same number of
+     * bytes, and pushes every match with its line number to the consumer as soon as it is found.
+     *
+     * @param f
+     * @param matcher
+     * @param threads
+     * @param consumer
+     * @param maxMatches
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics searchLines(final File f, final TextMatcher matcher, final Integer threads,
+                                               final Consumer<SearchMatch> consumer, final Long maxMatches)
+            throws IOException {
+        Long startTime = System.nanoTime();
+        LineIndex index = LineIndex.getIndex(f);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+            MemoryMappedFileRead mMapRead = lease.getMemoryMappedFileRead();
+            BlockingQueue<SearchMatch> queue = new ArrayBlockingQueue<>(Configuration.SEARCH_QUEUE_CAPACITY);
+            AtomicBoolean stop = new AtomicBoolean(false);
+
+            Long size = mMapRead.getOffsetLimit();
+            Long lines = index.getLineCount();
+            Integer count = SearchScheduler.chunkCount(size, SearchScheduler.chunkSize(size, threads));
+            count = Long.valueOf(Math.max(1L, Math.min(count, lines))).intValue();
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            long[] firstLines = new long[count];
+            for(int n = 0; n < count; n++) {
+                firstLines[n] = n * lines / count + 1;
+                starts[n] = lines > 0 ? index.getLineStart(firstLines[n]) : 0L;
+            }
+            for(int n = 0; n < count; n++) {
+                ends[n] = n == count - 1 ? size : starts[n + 1];
+            }
+
+            ForkJoinTask<List<ChunkStatistics>> search = SearchScheduler.submit(starts, ends,
+                    (chunk, start, end) -> {
+                        Long[] produced = { 0L };
+                        scanLocked(lock, mMapRead, matcher, start, end, (b, lineStart, lineEnd, position) -> {
+                            SearchMatch searchMatch = searchMatch(f, matcher, b, lineStart, lineEnd, position,
+                                    index.getLineNumber(position));
+                            if(offer(queue, searchMatch, stop)) {
+                                produced[0]++;
+                                return true;
+                            }
+                            return false;
+                        });
+                        return produced[0];
+                    }, stop);
+
+            return record(deliver(search, queue, stop, consumer, maxMatches, size, startTime));
+        } finally {
+            index.unmap();
+        }
+    }
+
+    /**
+     * Records the statistics of a finished search in the {@link SearchMonitor}.
+     *
+     * @param statistics
+     * @return the statistics
+     */
+    static SearchStatistics record(SearchStatistics statistics) {
+        SearchMonitor.getInstance().record(statistics);
+        return statistics;
+    }
+
+    /**
+     * Delivers the matches found by the search threads to the consumer, from the calling thread, until all
+     * the chunks are done or the maximum number of matches is reached.
+     *
+     * @param search
+     * @param queue
+     * @param stop
+     * @param consumer
+     * @param maxMatches
+     * @param bytes
+     * @param startTime
+     * @return
+     * @throws IOException
+     */
+    static SearchStatistics deliver(ForkJoinTask<List<ChunkStatistics>> search, BlockingQueue<SearchMatch> queue,
+                                    AtomicBoolean stop, Consumer<SearchMatch> consumer, Long maxMatches,
+                                    Long bytes, Long startTime) throws IOException {
+        Long delivered = 0L;
+        List<ChunkStatistics> chunks = new ArrayList<>();
+        try {
+            while(true) {
+                SearchMatch searchMatch = queue.poll(10, TimeUnit.MILLISECONDS);
+                if(searchMatch == null) {
+                    /*
+                     * No more matches can arrive once all the chunks are done
+                     */
+                    if(search.isDone() && queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                consumer.accept(searchMatch);
+                delivered++;
+                if(maxMatches != null && maxMatches > 0 && delivered >= maxMatches) {
+                    /*
+                     * The pending chunks are skipped and the running ones stop at the next match
+                     */
+                    stop.set(true);
                     break;
                 }
-                if(line.getValue().contains(s)) {
-                    lines.add(line.getValue());
+            }
+            if(!stop.get()) {
+                chunks = search.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("search interrupted");
+        } catch (ExecutionException e) {
+            throw SearchScheduler.unwrap(e);
+        } finally {
+            /*
+             * The running chunks stop at their next match, the mapping is released once they are done
+             */
+            stop.set(true);
+            search.quietlyJoin();
+        }
+
+        return new SearchStatistics(delivered, bytes, System.nanoTime() - startTime,
+                maxMatches != null && maxMatches > 0 && delivered >= maxMatches, chunks);
+    }
+
+    /**
+     * Builds the match for a line of the buffer.
+     *
+     * @param f
+     * @param matcher
+     * @param buffer
+     * @param lineStart
+     * @param lineEnd
+     * @param offset
+     * @return
+     */
+    static SearchMatch searchMatch(File f, TextMatcher matcher, ByteBuffer buffer, int lineStart, int lineEnd,
+                                   long offset) {
+        return searchMatch(f, matcher, buffer, lineStart, lineEnd, offset, null);
+    }
+
+    static SearchMatch searchMatch(File f, TextMatcher matcher, ByteBuffer buffer, int lineStart, int lineEnd,
+                                   long offset, Long lineNumber) {
+        return new SearchMatch(f, offset, lineNumber, LineDecoder.decode(buffer, lineStart, lineEnd),
+                matcher.matchedPatterns(buffer, lineStart, lineEnd));
+    }
+
+    /**
+     * Waits while the queue is full, unless the search has been stopped.
+     *
+     * @param queue
+     * @param searchMatch
+     * @param stop
+     * @return false if the search was stopped
+     */
+    static boolean offer(BlockingQueue<SearchMatch> queue, SearchMatch searchMatch, AtomicBoolean stop) {
+        try {
+            while(!stop.get()) {
+                if(queue.offer(searchMatch, 10, TimeUnit.MILLISECONDS)) {
+                    return true;
                 }
             }
-            return lines;
-        };
-        return task;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    static void scanLocked(ReadWriteLock lock, MemoryMappedFileRead mMapRead, TextMatcher matcher,
+                                   Long start, Long end, LineScanner.LineHandler handler)
+            throws IOException, InterruptedException {
+        scanLocked(lock, new MemoryMappedReadBackend(mMapRead), matcher, start, end, handler);
+    }
+
+    static void scanLocked(ReadWriteLock lock, ReadBackend readBackend, TextMatcher matcher,
+                           Long start, Long end, LineScanner.LineHandler handler)
+            throws IOException, InterruptedException {
+        /**
+         * Getting the read lock.
+         */
+        Lock l = lock.readLock();
+        /*
+         * Acquiring the read lock
+         */
+        if(!l.tryLock(1, TimeUnit.SECONDS)) {
+            throw new IOException("cannot acquire a read lock");
+        }
+        try {
+            /*
+             * Scanning the bytes of the chunk, which can span several mapped segments. Only the lines
+             * containing a match are copied out of the buffers.
+             */
+            readBackend.scan(start, end, matcher, handler);
+        } finally {
+            /*
+             * Releasing the read lock
+             */
+            l.unlock();
+        }
     }
 }
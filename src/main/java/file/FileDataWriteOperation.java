@@ -18,6 +18,7 @@ package file;
 
 import conf.Configuration;
 import data.Document;
+import io.FileDataDictionary;
 import io.FileDataFileSelector;
 import io.FileDataReader;
 import io.FileDataRecordFormat;
@@ -78,13 +79,20 @@ public class FileDataWriteOperation {
         Long nextBlockId = 0L, refBlockId = 0L;
         List<FileDataBlock> newBlocks = new ArrayList<>();
 
+        File dataFile = Configuration.getResource(dataFileName);
+        if(dataFile == null || dataFile.length() == 0) {
+            FileDataDictionary.initialize(dataFileName);
+        }
+        FileDataDictionary dictionary = FileDataDictionary.get(dataFileName);
+
         /*
          * Gets the on-disk format for the record data.
          */
         byte[] documentData = Document.serialize(document);
-        documentData = FileDataRecordFormat.encode(document.getName(), documentData);
+        dictionary.sample(documentData);
+        documentData = FileDataRecordFormat.encode(document.getName(), documentData, dictionary);
 
-        File dataFile = Configuration.getResource(dataFileName);
+        dataFile = Configuration.getResource(dataFileName);
         if(dataFile != null && dataFile.length() > 0) {
             /**
              * Locating the last data block and position in order to start writing
@@ -94,18 +102,23 @@ public class FileDataWriteOperation {
             if(lastBlock == null) {
                 throw new IOException("invalid last block");
             }
-            refByteOffset = lastBlock.getDataLength();
-            refBlockId = lastBlock.getID();
-            byteLength = Configuration.BLOCK_SIZE - lastBlock.getDataLength();
-            if(documentData.length < byteLength) {
-                byteLength = documentData.length;
-            }
-            if(byteLength > 0) {
+            nextBlockId = lastBlock.getID() + 1;
+            if(lastBlock.getDataLength() < Configuration.BLOCK_SIZE) {
+                refByteOffset = lastBlock.getDataLength();
+                refBlockId = lastBlock.getID();
+                byteLength = Configuration.BLOCK_SIZE - lastBlock.getDataLength();
+                if(documentData.length < byteLength) {
+                    byteLength = documentData.length;
+                }
                 lastBlock.writeAt(documentData, byteOffset, lastBlock.getDataLength(), byteLength);
                 byteOffset += byteLength;
+                newBlocks.add(lastBlock);
+            } else {
+                /*
+                 * The last block is full (or it is the header block), the record starts in a new block
+                 */
+                refBlockId = nextBlockId;
             }
-            nextBlockId = lastBlock.getID() + 1;
-            newBlocks.add(lastBlock);
         }
 
         /**
@@ -134,7 +147,8 @@ public class FileDataWriteOperation {
          * Gets the on-disk format for the record data.
          */
         byte[] documentData = Document.serialize(document);
-        documentData = FileDataRecordFormat.encode(document.getName(), documentData);
+        documentData = FileDataRecordFormat.encode(document.getName(), documentData,
+                FileDataDictionary.get(ref.getFilename()));
 
         if(documentData.length > ref.getByteLength()) {
             dataMoveUpdate(document, ref, documentData);
@@ -198,15 +212,18 @@ public class FileDataWriteOperation {
 
         Integer byteLength = Configuration.BLOCK_SIZE - lastBlock.getDataLength();
         Integer byteOffset = 0, lastByteOffset = lastBlock.getDataLength();
-        Long nextId = lastBlock.getID() + 1;
+        Long nextId = lastBlock.getID() + 1, refBlockId = lastBlock.getID();
         if(documentData.length < byteLength) {
             byteLength = documentData.length;
         }
         if(byteLength > 0) {
             lastBlock.writeAt(documentData, byteOffset, lastBlock.getDataLength(), byteLength);
             byteOffset = byteLength;
+            newBlocks.add(lastBlock);
+        } else {
+            refBlockId = nextId;
+            lastByteOffset = 0;
         }
-        newBlocks.add(lastBlock);
 
         for(; byteOffset < documentData.length; nextId++) {
             byteLength = documentData.length - byteOffset;
@@ -219,7 +236,7 @@ public class FileDataWriteOperation {
             newBlocks.add(additionalBlock);
         }
 
-        FileDataBlockRef newRef = new FileDataBlockRef(ref.getFilename(), lastBlock.getID(),
+        FileDataBlockRef newRef = new FileDataBlockRef(ref.getFilename(), refBlockId,
                 lastByteOffset, documentData.length);
 
         flushDataToDisk(ref.getFilename(), document, newRef, newBlocks);
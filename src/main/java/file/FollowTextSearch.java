@@ -0,0 +1,245 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+import io.ByteScanner;
+import io.MemoryMappedFileRead;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Follows a growing file, such as a live log, searching only the data appended since the last check. It works
+ * like <code>tail -f | grep</code> but with the mmap scanner.
+ *
+ * Every check maps just the window between the last searched position and the current end of the file, and
+ * scans the complete lines within it. A trailing line without EOL is still being written, so it is left for
+ * the next check. The matches are delivered in the file order.
+ *
+ * A file which gets shorter, or is replaced by a different file with the same name (log rotation), is
+ * followed again from the start.
+ *
+ * The window is unmapped as soon as it is scanned, so a long follow does not leave a mapping per check for the
+ * garbage collector. A trailing line without EOL is not searched for an EOL again, only the data appended after it.
+ *
+ * The window must not be truncated while it is scanned, as reading a mapped page beyond the end of the file
+ * fails. Logs are normally appended and rotated, not truncated in place.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class FollowTextSearch {
+    private final File file;
+    private final TextMatcher matcher;
+    private Object fileKey;
+    private Long position;
+    private Long scanned;
+
+    /**
+     * FollowTextSearch constructor. It starts from the end of the file, like tail, unless fromStart is true.
+     *
+     * @param f
+     * @param matcher
+     * @param fromStart
+     * @throws IOException
+     */
+    public FollowTextSearch(File f, TextMatcher matcher, Boolean fromStart) throws IOException {
+        this.file = f;
+        this.matcher = matcher;
+        this.fileKey = fileKey(f);
+        this.position = 0L;
+        this.scanned = 0L;
+        if(!fromStart && f.length() > 0) {
+            MemoryMappedFileRead mMapRead = new MemoryMappedFileRead(f);
+            try {
+                this.position = lastLineEnd(mMapRead, 0L, mMapRead.getOffsetLimit());
+            } finally {
+                mMapRead.unmap();
+            }
+        }
+    }
+
+    /**
+     * Returns the file offset where the next check starts.
+     *
+     * @return
+     */
+    public Long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * Searches the complete lines appended since the last check, delivering the matches to the consumer.
+     *
+     * @param consumer
+     * @return the number of matches
+     * @throws IOException
+     */
+    public Long poll(Consumer<SearchMatch> consumer) throws IOException {
+        if(!this.file.isFile()) {
+            return 0L;
+        }
+        Object key = fileKey(this.file);
+        Long length = this.file.length();
+        if(length < this.position || (key != null && !key.equals(this.fileKey))) {
+            /*
+             * Truncated or rotated
+             */
+            this.position = 0L;
+            this.scanned = 0L;
+            this.fileKey = key;
+        }
+        if(length <= this.position || length <= this.scanned) {
+            return 0L;
+        }
+
+        MemoryMappedFileRead mMapRead = new MemoryMappedFileRead(this.file, this.position, length,
+                Configuration.MMAP_SEGMENT_SIZE, Configuration.MMAP_SEGMENT_OVERLAP);
+        try {
+            /*
+             * The data up to the scanned offset is known to have no EOL
+             */
+            Long from = Math.max(this.position, this.scanned);
+            Long end = lastLineEnd(mMapRead, from, mMapRead.getOffsetLimit());
+            if(end <= from) {
+                this.scanned = mMapRead.getOffsetLimit();
+                return 0L;
+            }
+            Long matches = scan(mMapRead, this.position, end, consumer);
+            this.position = end;
+            return matches;
+        } finally {
+            /*
+             * The scan has finished with the window, including the chunks run by the search pool
+             */
+            mMapRead.unmap();
+        }
+    }
+
+    /**
+     * Checks the file every interval (in milliseconds) until stop is set or the thread is interrupted.
+     *
+     * @param consumer
+     * @param interval
+     * @param stop
+     * @throws IOException
+     */
+    public void follow(Consumer<SearchMatch> consumer, Long interval, AtomicBoolean stop) throws IOException {
+        while(!stop.get()) {
+            poll(consumer);
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public void follow(Consumer<SearchMatch> consumer, AtomicBoolean stop) throws IOException {
+        follow(consumer, Configuration.FOLLOW_POLL_INTERVAL, stop);
+    }
+
+    private Long scan(MemoryMappedFileRead mMapRead, Long start, Long end, Consumer<SearchMatch> consumer)
+            throws IOException {
+        if(end - start <= Configuration.SEARCH_CHUNK_SIZE) {
+            /*
+             * The usual case, a few new lines are scanned by the calling thread
+             */
+            Long[] matches = { 0L };
+            LineScanner.scan(mMapRead, start, end, this.matcher, (buffer, lineStart, lineEnd, offset) -> {
+                consumer.accept(ConcurrentFileTextSearch.searchMatch(this.file, this.matcher, buffer, lineStart,
+                        lineEnd, offset));
+                matches[0]++;
+                return true;
+            });
+            return matches[0];
+        }
+
+        /*
+         * A big backlog, such as the first check from the start of the file, is divided in chunks for the
+         * search pool. The matches of every chunk are kept apart so they can be delivered in the file order.
+         */
+        Long chunkSize = Configuration.SEARCH_CHUNK_SIZE;
+        Integer count = SearchScheduler.chunkCount(end - start, chunkSize);
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        List<List<SearchMatch>> chunkMatches = new ArrayList<>();
+        for(int n = 0; n < count; n++) {
+            starts[n] = start + n * chunkSize;
+            ends[n] = Math.min(end, starts[n] + chunkSize);
+            chunkMatches.add(new ArrayList<>());
+        }
+        SearchScheduler.invoke(starts, ends, (chunk, chunkStart, chunkEnd) -> {
+            List<SearchMatch> found = chunkMatches.get(chunk);
+            LineScanner.scan(mMapRead, chunkStart, chunkEnd, this.matcher, (buffer, lineStart, lineEnd, offset) ->
+                    found.add(ConcurrentFileTextSearch.searchMatch(this.file, this.matcher, buffer, lineStart,
+                            lineEnd, offset)));
+            return Long.valueOf(found.size());
+        }, new AtomicBoolean(false));
+
+        Long matches = 0L;
+        for(List<SearchMatch> found : chunkMatches) {
+            found.forEach(consumer);
+            matches += found.size();
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the offset after the last EOL within [start, end), or start if there is none.
+     *
+     * @param mMapRead
+     * @param start
+     * @param end
+     * @return
+     */
+    private static Long lastLineEnd(MemoryMappedFileRead mMapRead, Long start, Long end) {
+        while(end > start) {
+            Integer segment = mMapRead.getSegmentIndex(end - 1);
+            Long offset = mMapRead.getSegmentOffset(segment);
+            Long from = Math.max(start, offset);
+            int eol = ByteScanner.lastIndexOf(mMapRead.getSegment(segment), LineScanner.EOL,
+                    Long.valueOf(from - offset).intValue(), Long.valueOf(end - offset).intValue());
+            if(eol >= 0) {
+                return offset + eol + 1;
+            }
+            end = from;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the key which identifies the file (the inode on Unix), or null if the platform has none.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    private static Object fileKey(File f) throws IOException {
+        if(!f.exists()) {
+            return null;
+        }
+        return Files.readAttributes(f.toPath(), BasicFileAttributes.class).fileKey();
+    }
+}
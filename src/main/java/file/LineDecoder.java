@@ -0,0 +1,74 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the matching lines as UTF-8, straight from the mapped buffer.
+ *
+ * Every thread keeps its own decoder and output buffer, so decoding a line does not allocate anything but the
+ * resulting string. Malformed sequences are replaced instead of failing the search.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class LineDecoder {
+    private static final ThreadLocal<LineDecoder> decoders = ThreadLocal.withInitial(LineDecoder::new);
+    private final CharsetDecoder decoder;
+    private CharBuffer output;
+
+    private LineDecoder() {
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.output = CharBuffer.allocate(256);
+    }
+
+    /**
+     * Decodes the [from, to) range of the buffer.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    public static String decode(ByteBuffer buffer, int from, int to) {
+        return decoders.get().decodeRange(buffer, from, to);
+    }
+
+    private String decodeRange(ByteBuffer buffer, int from, int to) {
+        ByteBuffer input = buffer.duplicate();
+        input.limit(to);
+        input.position(from);
+        /*
+         * UTF-8 never produces more chars than bytes
+         */
+        if(this.output.capacity() < to - from) {
+            this.output = CharBuffer.allocate(Integer.highestOneBit(to - from) << 1);
+        }
+        this.output.clear();
+        this.decoder.reset();
+        this.decoder.decode(input, this.output, true);
+        this.decoder.flush(this.output);
+        this.output.flip();
+        return this.output.toString();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import io.ByteScanner;
+import io.MemoryMappedFileRead;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scans a data region of a buffer looking for matches and reports the lines containing them.
+ *
+ * The matcher runs over the raw bytes of the whole region. Line boundaries are only located around
+ * a match, so lines without any match are never copied or decoded.
+ *
+ * A region owns every line whose first byte lies within [start, end). This way consecutive regions
+ * can be assigned to different threads without reporting any line twice.
+ *
+ * Over a segmented mapping, each segment is scanned for the lines starting within the data it owns.
+ * Those lines normally end within the overlap with the next segment. A line longer than the overlap
+ * is read out of the mapping on its own and matched separately.
+ *
+ * Line boundaries are located 8 bytes at a time by {@link ByteScanner}.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class LineScanner {
+    public static final byte EOL = 10;
+
+    /**
+     * Receives the lines containing a match.
+     */
+    public interface LineHandler {
+
+        /**
+         * Handles a matching line, from lineStart (inclusive) to lineEnd (exclusive, the EOL is not
+         * included). Returns false in order to stop the scan.
+         *
+         * @param buffer
+         * @param lineStart
+         * @param lineEnd
+         * @param offset file offset of the line start
+         * @return
+         */
+        boolean onLine(ByteBuffer buffer, int lineStart, int lineEnd, long offset);
+    }
+
+    /**
+     * Scans the lines owned by the [start, end) region of the buffer.
+     *
+     * @param buffer
+     * @param start
+     * @param end
+     * @param matcher
+     * @param handler
+     * @return false if the handler stopped the scan
+     */
+    public static boolean scan(ByteBuffer buffer, int start, int end, TextMatcher matcher, LineHandler handler) {
+        int limit = buffer.limit();
+        int position = alignToLineStart(buffer, start, limit);
+        int scanLimit = end >= limit ? limit : alignToLineStart(buffer, end, limit);
+        return scanLines(buffer, position, scanLimit, 0L, matcher, handler);
+    }
+
+    /**
+     * Scans the lines owned by the [start, end) region of the mapped file. The region can span any
+     * number of segments.
+     *
+     * @param source
+     * @param start
+     * @param end
+     * @param matcher
+     * @param handler
+     * @return false if the handler stopped the scan
+     */
+    public static boolean scan(MemoryMappedFileRead source, long start, long end, TextMatcher matcher,
+                               LineHandler handler) {
+        long limit = source.getOffsetLimit();
+        long position = start <= source.getOffsetStart() ? source.getOffsetStart() : source.seekEOL(start - 1);
+        end = Math.min(end, limit);
+
+        while(position < end) {
+            Integer segment = source.getSegmentIndex(position);
+            long segmentOffset = source.getSegmentOffset(segment);
+            long ownedEnd = Math.min(end, source.getSegmentEnd(segment));
+            ByteBuffer buffer = source.getSegment(segment);
+
+            int from = (int) (position - segmentOffset);
+            int to = (int) (ownedEnd - segmentOffset);
+            int scanLimit = buffer.limit();
+            if(ownedEnd < limit) {
+                int eol = indexOfEOL(buffer, to - 1, buffer.limit());
+                scanLimit = eol < 0 ? lastIndexOfEOL(buffer, from, to) + 1 : eol + 1;
+            }
+
+            if(!scanLines(buffer, from, scanLimit, segmentOffset, matcher, handler)) {
+                return false;
+            }
+            position = segmentOffset + scanLimit;
+
+            if(position < ownedEnd) {
+                /*
+                 * The last line of the segment does not fit in the overlap
+                 */
+                long lineEnd = source.seekEOL(position);
+                if(!scanLongLine(source, position, lineEnd, matcher, handler)) {
+                    return false;
+                }
+                position = lineEnd;
+            }
+        }
+        return true;
+    }
+
+    private static boolean scanLines(ByteBuffer buffer, int position, int scanLimit, long offset,
+                                     TextMatcher matcher, LineHandler handler) {
+        while(position < scanLimit) {
+            int match = matcher.indexOf(buffer, position, scanLimit);
+            if(match < 0) {
+                break;
+            }
+            int lineStart = lastIndexOfEOL(buffer, position, match) + 1;
+            int lineEnd = indexOfEOL(buffer, match, scanLimit);
+            if(lineEnd < 0) {
+                lineEnd = scanLimit;
+            }
+            if(!handler.onLine(buffer, lineStart, lineEnd, offset + lineStart)) {
+                return false;
+            }
+            position = lineEnd + 1;
+        }
+        return true;
+    }
+
+    private static boolean scanLongLine(MemoryMappedFileRead source, long start, long end, TextMatcher matcher,
+                                        LineHandler handler) {
+        if(end > start && source.get(end - 1) == EOL) {
+            end--;
+        }
+        byte[] data = new byte[(int) (end - start)];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = source.get(start + i);
+        }
+        ByteBuffer line = ByteBuffer.wrap(data);
+        if(matcher.indexOf(line, 0, data.length) < 0) {
+            return true;
+        }
+        return handler.onLine(line, 0, data.length, start);
+    }
+
+    /**
+     * Copies the [from, to) range of the buffer into a new array.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    public static byte[] copy(ByteBuffer buffer, int from, int to) {
+        byte[] data = new byte[to - from];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = buffer.get(from + i);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the start of the first line beginning at or after the position.
+     *
+     * @param buffer
+     * @param position
+     * @param limit
+     * @return
+     */
+    public static int alignToLineStart(ByteBuffer buffer, int position, int limit) {
+        if(position <= 0) {
+            return 0;
+        }
+        int eol = indexOfEOL(buffer, position - 1, limit);
+        return eol < 0 ? limit : eol + 1;
+    }
+
+    /**
+     * Returns the position of the first EOL within [from, to), or -1.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    public static int indexOfEOL(ByteBuffer buffer, int from, int to) {
+        return ByteScanner.indexOf(buffer, EOL, from, to);
+    }
+
+    /**
+     * Returns the position of the last EOL within [from, to), or from - 1 if there is none.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    public static int lastIndexOfEOL(ByteBuffer buffer, int from, int to) {
+        int eol = ByteScanner.lastIndexOf(buffer, EOL, from, to);
+        return eol < 0 ? from - 1 : eol;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+import io.ReadBackend;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the same search through every read backend, with a cold and a warm page cache, and prints the time and
+ * the throughput of every run.
+ *
+ * Usage: <code>ReadBackendBenchmark &lt;file&gt; &lt;text&gt; [runs] [threads]</code>
+ *
+ * The page cache is dropped before the cold runs by writing into /proc/sys/vm/drop_caches, which requires root
+ * privileges on Linux. Otherwise the cold runs are skipped and only the warm ones are reported.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ReadBackendBenchmark {
+    private static final List<Integer> BACKENDS = Arrays.asList(ReadBackend.MMAP, ReadBackend.FILE_CHANNEL,
+            ReadBackend.STREAM);
+
+    /**
+     * Main method.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if(args.length < 2) {
+            System.out.println("Usage: ReadBackendBenchmark <file> <text> [runs] [threads]");
+            return;
+        }
+        File f = new File(args[0]);
+        TextMatcher matcher = new BoyerMooreHorspoolMatcher(args[1]);
+        Integer runs = args.length > 2 ? Integer.valueOf(args[2]) : 3;
+        Integer threads = args.length > 3 ? Integer.valueOf(args[3]) : Configuration.SEARCH_THREADS;
+
+        try {
+            for(Integer backend : BACKENDS) {
+                if(dropPageCache()) {
+                    print(backend, "cold", run(f, matcher, backend, threads));
+                } else {
+                    System.out.println(ReadBackend.name(backend) + " cold: skipped, cannot drop the page cache");
+                }
+                for(Integer n = 0; n < runs; n++) {
+                    print(backend, "warm", run(f, matcher, backend, threads));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the search once, counting the matches.
+     *
+     * @param f
+     * @param matcher
+     * @param backend
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static SearchStatistics run(File f, TextMatcher matcher, Integer backend, Integer threads)
+            throws IOException {
+        return ConcurrentFileTextSearch.search(f, matcher, threads, backend, searchMatch -> { }, null);
+    }
+
+    /**
+     * Writes the dirty pages and drops the page cache. Returns false if it is not allowed.
+     *
+     * @return
+     */
+    public static Boolean dropPageCache() {
+        File dropCaches = new File("/proc/sys/vm/drop_caches");
+        if(!dropCaches.canWrite()) {
+            return false;
+        }
+        try {
+            Runtime.getRuntime().exec("sync").waitFor();
+            try(FileOutputStream out = new FileOutputStream(dropCaches)) {
+                out.write("1\n".getBytes());
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void print(Integer backend, String cache, SearchStatistics statistics) {
+        double seconds = statistics.getElapsedNanos() / 1e9;
+        System.out.println(String.format("%s %s: %d matches, %.3f s, %.1f MB/s, slowest chunk %.3f s",
+                ReadBackend.name(backend), cache, statistics.getMatches(), seconds,
+                statistics.getBytes() / 1048576.0 / Math.max(seconds, 1e-9), statistics.getMaxChunkNanos() / 1e9));
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression matcher.
+ *
+ * Running {@link java.util.regex.Pattern} requires decoding every line, which is much slower than a byte scan.
+ * In order to avoid it, the literal strings that any match must contain are extracted from the expression and
+ * searched first over the raw bytes. The expression only runs over the lines containing one of those literals.
+ *
+ * For example <code>ERROR [0-9]+ timeout</code> only decodes the lines containing " timeout" and
+ * <code>[0-9]+ (foo|bar)baz</code> only the lines containing "baz". Expressions with no required literal (or
+ * flags changing how the literals match, such as unicode case or comments) are evaluated over every line.
+ * A single literal of an ASCII case insensitive expression is searched with {@link CaseInsensitiveMatcher}.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class RegexMatcher implements TextMatcher {
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]*[ixuU]");
+    private final Pattern pattern;
+    private final TextMatcher prefilter;
+
+    /**
+     * RegexMatcher constructor.
+     *
+     * @param pattern
+     */
+    public RegexMatcher(Pattern pattern) {
+        this.pattern = pattern;
+
+        List<String> literals = Collections.emptyList();
+        Integer flags = pattern.flags() & ~(Pattern.MULTILINE | Pattern.DOTALL | Pattern.UNIX_LINES);
+        if((flags & ~Pattern.CASE_INSENSITIVE) == 0 && !INLINE_FLAGS.matcher(pattern.pattern()).find()) {
+            literals = requiredLiterals(pattern.pattern());
+        }
+        if(literals.isEmpty()) {
+            this.prefilter = null;
+        } else if(flags != 0) {
+            /*
+             * ASCII case insensitive, the folding of the matcher finds a superset of those matches
+             */
+            this.prefilter = literals.size() == 1 ? new CaseInsensitiveMatcher(literals.get(0)) : null;
+        } else if(literals.size() == 1) {
+            this.prefilter = new BoyerMooreHorspoolMatcher(literals.get(0));
+        } else {
+            this.prefilter = new AhoCorasickMatcher(literals);
+        }
+    }
+
+    public Pattern getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Returns true if the candidate lines are selected by a literal scan.
+     *
+     * @return
+     */
+    public Boolean hasPrefilter() {
+        return this.prefilter != null;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return this.prefilter == null ? null : this.prefilter.requiredLiterals();
+    }
+
+    /**
+     * Returns the start of the first line within [from, to) matching the expression. The range must start
+     * at a line start.
+     */
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int position = from;
+        while(position < to) {
+            int candidate = this.prefilter == null ? position : this.prefilter.indexOf(buffer, position, to);
+            if(candidate < 0) {
+                return -1;
+            }
+            int lineStart = LineScanner.lastIndexOfEOL(buffer, position, candidate) + 1;
+            int lineEnd = LineScanner.indexOfEOL(buffer, candidate, to);
+            if(lineEnd < 0) {
+                lineEnd = to;
+            }
+            String line = LineDecoder.decode(buffer, lineStart, lineEnd);
+            if(this.pattern.matcher(line).find()) {
+                return lineStart;
+            }
+            position = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Extracts the literals required by the expression. It returns a single literal, one literal per
+     * alternative of a top level alternation, or an empty list if some alternative has no required literal.
+     *
+     * The extraction is conservative: anything inside groups, character classes or escapes other than
+     * escaped punctuation is ignored.
+     *
+     * @param regex
+     * @return
+     */
+    public static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        for(String alternative : topLevelAlternatives(regex)) {
+            String literal = longestRequiredLiteral(alternative);
+            if(literal.isEmpty()) {
+                return Collections.emptyList();
+            }
+            literals.add(literal);
+        }
+        return literals;
+    }
+
+    private static List<String> topLevelAlternatives(String regex) {
+        List<String> alternatives = new ArrayList<>();
+        int depth = 0, start = 0;
+        for(int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\') {
+                if(i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 1;
+                } else {
+                    i = escapeEnd(regex, i);
+                }
+            } else if(c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if(c == '(') {
+                depth++;
+            } else if(c == ')') {
+                depth--;
+            } else if(c == '|' && depth == 0) {
+                alternatives.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(regex.substring(start));
+        return alternatives;
+    }
+
+    private static String longestRequiredLiteral(String regex) {
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        boolean lastIsLiteral = false;
+
+        for(int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(i + 1);
+                if(next == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    end = end < 0 ? regex.length() : end;
+                    run.append(regex, i + 2, end);
+                    lastIsLiteral = end > i + 2;
+                    i = end + 1;
+                } else if(Character.isLetterOrDigit(next)) {
+                    /*
+                     * Character classes, back references, code points and control characters
+                     */
+                    longest = longer(longest, run);
+                    lastIsLiteral = false;
+                    i = escapeEnd(regex, i);
+                } else {
+                    run.append(next);
+                    lastIsLiteral = true;
+                    i++;
+                }
+            } else if(c == '*' || c == '?' || c == '{') {
+                /*
+                 * The previous character becomes optional, unless the repetition has a minimum
+                 */
+                Boolean optional = true;
+                if(c == '{') {
+                    int end = regex.indexOf('}', i);
+                    end = end < 0 ? regex.length() : end;
+                    String min = regex.substring(i + 1, end).split(",", -1)[0].trim();
+                    optional = !min.matches("[0-9]{1,9}") || Integer.parseInt(min) == 0;
+                    i = end;
+                }
+                if(lastIsLiteral && optional) {
+                    run.setLength(run.length() - 1);
+                }
+                longest = longer(longest, run);
+                lastIsLiteral = false;
+            } else if(c == '+') {
+                longest = longer(longest, run);
+                lastIsLiteral = false;
+            } else if(c == '[' || c == '(' || c == '.' || c == '^' || c == '$' || c == ')' || c == '|') {
+                longest = longer(longest, run);
+                lastIsLiteral = false;
+                if(c == '[') {
+                    i = skipCharacterClass(regex, i);
+                } else if(c == '(') {
+                    i = skipGroup(regex, i);
+                }
+            } else {
+                run.append(c);
+                lastIsLiteral = true;
+            }
+        }
+        return longer(longest, run);
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        String candidate = run.toString();
+        run.setLength(0);
+        return candidate.getBytes(StandardCharsets.UTF_8).length > longest.getBytes(StandardCharsets.UTF_8).length ?
+                candidate : longest;
+    }
+
+    /**
+     * Returns the index of the last character of the escape starting at i, the index of the backslash. Most escapes
+     * take one character, but the properties, the code points, the octal values, the control characters and the
+     * named references take more.
+     */
+    private static int escapeEnd(String regex, int i) {
+        if(i + 1 >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i + 1);
+        int end = i + 1;
+        switch(c) {
+            case 'p':
+            case 'P':
+            case 'N':
+                if(end + 1 < regex.length() && regex.charAt(end + 1) == '{') {
+                    end = regex.indexOf('}', end + 1);
+                } else if(c != 'N') {
+                    end++;
+                }
+                break;
+            case 'x':
+                if(end + 1 < regex.length() && regex.charAt(end + 1) == '{') {
+                    end = regex.indexOf('}', end + 1);
+                } else {
+                    end += 2;
+                }
+                break;
+            case 'u':
+                end += 4;
+                break;
+            case 'c':
+                end++;
+                break;
+            case 'k':
+                end = regex.indexOf('>', end);
+                break;
+            case '0':
+                /*
+                 * Up to three octal digits, the third one only if the value stays below 0377
+                 */
+                int digits = 0, max = end + 1 < regex.length() && regex.charAt(end + 1) <= '3' ? 3 : 2;
+                while(digits < max && end + 1 < regex.length() && regex.charAt(end + 1) >= '0' &&
+                        regex.charAt(end + 1) <= '7') {
+                    end++;
+                    digits++;
+                }
+                break;
+            default:
+                break;
+        }
+        return end < 0 ? regex.length() - 1 : Math.min(end, regex.length() - 1);
+    }
+
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if(i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if(i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        for(; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\') {
+                i = escapeEnd(regex, i);
+            } else if(c == '[') {
+                depth++;
+            } else if(c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        for(int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\') {
+                i = escapeEnd(regex, i);
+            } else if(c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if(c == '(') {
+                depth++;
+            } else if(c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A line matching a search, together with the file and the file offset where the line starts. Multiple
+ * pattern searches also report the patterns found in the line, and the searches using a line index report
+ * the line number. Searches with context also keep the lines before and after the match.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SearchMatch {
+    private final File file;
+    private final Long offset;
+    private final Long lineNumber;
+    private final String line;
+    private final List<String> patterns;
+    private final List<SearchMatch> before;
+    private final List<SearchMatch> after;
+
+    /**
+     * SearchMatch constructor.
+     *
+     * @param offset
+     * @param line
+     */
+    public SearchMatch(final Long offset, final String line) {
+        this(offset, line, Collections.emptyList());
+    }
+
+    /**
+     * SearchMatch constructor.
+     *
+     * @param offset
+     * @param line
+     * @param patterns
+     */
+    public SearchMatch(final Long offset, final String line, final List<String> patterns) {
+        this(null, offset, line, patterns);
+    }
+
+    /**
+     * SearchMatch constructor.
+     *
+     * @param file
+     * @param offset
+     * @param line
+     * @param patterns
+     */
+    public SearchMatch(final File file, final Long offset, final String line, final List<String> patterns) {
+        this(file, offset, null, line, patterns);
+    }
+
+    /**
+     * SearchMatch constructor.
+     *
+     * @param file
+     * @param offset
+     * @param lineNumber
+     * @param line
+     * @param patterns
+     */
+    public SearchMatch(final File file, final Long offset, final Long lineNumber, final String line,
+                       final List<String> patterns) {
+        this(file, offset, lineNumber, line, patterns, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * SearchMatch constructor.
+     *
+     * @param file
+     * @param offset
+     * @param lineNumber
+     * @param line
+     * @param patterns
+     * @param before
+     * @param after
+     */
+    public SearchMatch(final File file, final Long offset, final Long lineNumber, final String line,
+                       final List<String> patterns, final List<SearchMatch> before, final List<SearchMatch> after) {
+        this.file = file;
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+        this.line = line;
+        this.patterns = patterns;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Returns a copy of the match with other context lines.
+     *
+     * @param before
+     * @param after
+     * @return
+     */
+    public SearchMatch withContext(final List<SearchMatch> before, final List<SearchMatch> after) {
+        return new SearchMatch(this.file, this.offset, this.lineNumber, this.line, this.patterns, before, after);
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public Long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the line number, starting from 1, or null if the search did not use a line index.
+     *
+     * @return
+     */
+    public Long getLineNumber() {
+        return this.lineNumber;
+    }
+
+    public String getLine() {
+        return this.line;
+    }
+
+    /**
+     * Returns the patterns found in the line by a multiple pattern search.
+     *
+     * @return
+     */
+    public List<String> getPatterns() {
+        return this.patterns;
+    }
+
+    /**
+     * Returns the context lines before the match, in the file order.
+     *
+     * @return
+     */
+    public List<SearchMatch> getBefore() {
+        return this.before;
+    }
+
+    /**
+     * Returns the context lines after the match, in the file order.
+     *
+     * @return
+     */
+    public List<SearchMatch> getAfter() {
+        return this.after;
+    }
+
+    public String toString() {
+        Long position = this.lineNumber != null ? this.lineNumber : this.offset;
+        if(this.file != null) {
+            return this.file.getPath() + ":" + position + ": " + this.line;
+        }
+        return position + ": " + this.line;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import io.PageStatistics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the statistics of the searches as JMX attributes, under <code>file:type=SearchMonitor</code>. It
+ * keeps the totals of all the searches and the statistics of the last one, so a monitoring tool can follow the
+ * throughput, the page faults and how much of the searched files stays in the page cache.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SearchMonitor implements SearchMonitorMBean {
+    public static final String OBJECT_NAME = "file:type=SearchMonitor";
+    private static final SearchMonitor instance = new SearchMonitor();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong totalMinorFaults = new AtomicLong();
+    private final AtomicLong totalMajorFaults = new AtomicLong();
+    private volatile SearchStatistics last;
+    private volatile Boolean pageStatisticsEnabled = false;
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            /*
+             * Already registered by another class loader, the statistics are still kept
+             */
+        }
+    }
+
+    private SearchMonitor() {
+    }
+
+    public static SearchMonitor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns true when the searches collect the page faults and the residency of the file, which reads the
+     * /proc files of the process on every search.
+     *
+     * @return
+     */
+    @Override
+    public Boolean getPageStatisticsEnabled() {
+        return this.pageStatisticsEnabled;
+    }
+
+    /**
+     * Enables or disables the page statistics of the searches, they are disabled by default.
+     *
+     * @param enabled
+     */
+    @Override
+    public void setPageStatisticsEnabled(Boolean enabled) {
+        this.pageStatisticsEnabled = Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * Records the statistics of a finished search.
+     *
+     * @param statistics
+     */
+    public void record(SearchStatistics statistics) {
+        this.searches.incrementAndGet();
+        this.totalBytes.addAndGet(statistics.getBytes());
+        PageStatistics pageStatistics = statistics.getPageStatistics();
+        if(pageStatistics != null) {
+            this.totalMinorFaults.addAndGet(pageStatistics.getMinorFaults());
+            this.totalMajorFaults.addAndGet(pageStatistics.getMajorFaults());
+        }
+        this.last = statistics;
+    }
+
+    @Override
+    public Long getSearches() {
+        return this.searches.get();
+    }
+
+    @Override
+    public Long getTotalBytes() {
+        return this.totalBytes.get();
+    }
+
+    @Override
+    public Long getTotalMinorFaults() {
+        return this.totalMinorFaults.get();
+    }
+
+    @Override
+    public Long getTotalMajorFaults() {
+        return this.totalMajorFaults.get();
+    }
+
+    @Override
+    public Long getLastMatches() {
+        return this.last == null ? 0L : this.last.getMatches();
+    }
+
+    @Override
+    public Long getLastBytes() {
+        return this.last == null ? 0L : this.last.getBytes();
+    }
+
+    @Override
+    public Long getLastElapsedNanos() {
+        return this.last == null ? 0L : this.last.getElapsedNanos();
+    }
+
+    @Override
+    public Long getLastBytesPerSecond() {
+        return this.last == null ? 0L : this.last.getBytesPerSecond();
+    }
+
+    @Override
+    public Long getLastMaxChunkNanos() {
+        return this.last == null ? 0L : this.last.getMaxChunkNanos();
+    }
+
+    @Override
+    public Long getLastMinorFaults() {
+        PageStatistics pageStatistics = lastPageStatistics();
+        return pageStatistics == null ? 0L : pageStatistics.getMinorFaults();
+    }
+
+    @Override
+    public Long getLastMajorFaults() {
+        PageStatistics pageStatistics = lastPageStatistics();
+        return pageStatistics == null ? 0L : pageStatistics.getMajorFaults();
+    }
+
+    @Override
+    public Long getLastMappedBytes() {
+        PageStatistics pageStatistics = lastPageStatistics();
+        return pageStatistics == null ? 0L : pageStatistics.getMappedBytes();
+    }
+
+    @Override
+    public Long getLastResidentBytes() {
+        PageStatistics pageStatistics = lastPageStatistics();
+        return pageStatistics == null ? 0L : pageStatistics.getResidentBytes();
+    }
+
+    private PageStatistics lastPageStatistics() {
+        SearchStatistics statistics = this.last;
+        return statistics == null ? null : statistics.getPageStatistics();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+/**
+ * JMX attributes of the searches (see {@link SearchMonitor}).
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public interface SearchMonitorMBean {
+
+    Boolean getPageStatisticsEnabled();
+
+    void setPageStatisticsEnabled(Boolean enabled);
+
+    Long getSearches();
+
+    Long getTotalBytes();
+
+    Long getTotalMinorFaults();
+
+    Long getTotalMajorFaults();
+
+    Long getLastMatches();
+
+    Long getLastBytes();
+
+    Long getLastElapsedNanos();
+
+    Long getLastBytesPerSecond();
+
+    Long getLastMaxChunkNanos();
+
+    Long getLastMinorFaults();
+
+    Long getLastMajorFaults();
+
+    Long getLastMappedBytes();
+
+    Long getLastResidentBytes();
+}
@@ -0,0 +1,91 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a search in one of the result modes of {@link ConcurrentFileTextSearch}. Only the data of the
+ * requested mode is filled: the matching lines, the line offsets, or just the number of matches.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SearchResult {
+    private final Integer mode;
+    private final Long count;
+    private final long[] offsets;
+    private final List<SearchMatch> matches;
+    private final SearchStatistics statistics;
+
+    /**
+     * SearchResult constructor.
+     *
+     * @param mode
+     * @param count
+     * @param offsets
+     * @param matches
+     * @param statistics
+     */
+    public SearchResult(final Integer mode, final Long count, final long[] offsets, final List<SearchMatch> matches,
+                        final SearchStatistics statistics) {
+        this.mode = mode;
+        this.count = count;
+        this.offsets = offsets;
+        this.matches = matches;
+        this.statistics = statistics;
+    }
+
+    public Integer getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Returns the number of matching lines. The exists mode stops at the first one, so it returns 0 or 1.
+     *
+     * @return
+     */
+    public Long getCount() {
+        return this.count;
+    }
+
+    public Boolean exists() {
+        return this.count > 0;
+    }
+
+    /**
+     * Returns the file offsets of the matching lines, in the file order. Only filled in the offsets mode.
+     *
+     * @return
+     */
+    public long[] getOffsets() {
+        return this.offsets;
+    }
+
+    /**
+     * Returns the matching lines, in the file order. Only filled in the lines mode.
+     *
+     * @return
+     */
+    public List<SearchMatch> getMatches() {
+        return this.matches == null ? Collections.emptyList() : this.matches;
+    }
+
+    public SearchStatistics getStatistics() {
+        return this.statistics;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import conf.Configuration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules the chunks of the searches over a shared
+ * <a href="https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ForkJoinPool.html">fork/join pool</a>.
+ *
+ * The data is divided in many small chunks instead of one region per thread. The chunk ranges are recursively
+ * split in halves, so a thread which finishes its chunks early steals the pending halves from the busy ones.
+ * A chunk full of long lines or cold pages does not leave the rest of the threads idle anymore.
+ *
+ * Chunks are plain byte ranges. As a line belongs to the chunk where it starts (see {@link LineScanner}),
+ * every chunk behaves as if it was aligned to line boundaries.
+ *
+ * The pool is created once, so no thread is started by a search.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SearchScheduler {
+    private static ForkJoinPool searchPool;
+
+    static {
+        /*
+         * A static thread pool shared by all the searches.
+         */
+        searchPool = new ForkJoinPool(Configuration.SEARCH_THREADS);
+    }
+
+    /**
+     * Searches a single chunk.
+     */
+    public interface ChunkSearch {
+
+        /**
+         * Searches the lines starting within [start, end) and returns the number of matches.
+         *
+         * @param chunk
+         * @param start
+         * @param end
+         * @return
+         * @throws Exception
+         */
+        Long search(Integer chunk, Long start, Long end) throws Exception;
+    }
+
+    /**
+     * Returns the chunk size for the data, making sure there are at least the minimum number of chunks.
+     *
+     * @param offsetLimit
+     * @param minChunks
+     * @return
+     */
+    public static Long chunkSize(Long offsetLimit, Integer minChunks) {
+        Long size = (offsetLimit + minChunks - 1) / Math.max(1, minChunks);
+        return Math.max(1L, Math.min(Configuration.SEARCH_CHUNK_SIZE, size));
+    }
+
+    /**
+     * Returns the number of chunks of the data.
+     *
+     * @param offsetLimit
+     * @param chunkSize
+     * @return
+     */
+    public static Integer chunkCount(Long offsetLimit, Long chunkSize) {
+        return Long.valueOf(Math.max(1L, (offsetLimit + chunkSize - 1) / chunkSize)).intValue();
+    }
+
+    /**
+     * Submits the search of all the chunks to the shared pool. The returned task completes with the
+     * statistics of every chunk, in the chunk order. Pending chunks are skipped once stop is set.
+     *
+     * @param offsetLimit
+     * @param chunkSize
+     * @param chunkSearch
+     * @param stop
+     * @return
+     */
+    public static ForkJoinTask<List<ChunkStatistics>> submit(final Long offsetLimit, final Long chunkSize,
+                                                             final ChunkSearch chunkSearch,
+                                                             final AtomicBoolean stop) {
+        Integer count = chunkCount(offsetLimit, chunkSize);
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for(int n = 0; n < count; n++) {
+            starts[n] = n * chunkSize;
+            ends[n] = n == count - 1 ? offsetLimit : Math.min(offsetLimit, starts[n] + chunkSize);
+        }
+        return submit(starts, ends, chunkSearch, stop);
+    }
+
+    /**
+     * Submits the search of the given chunks to the shared pool. Chunk n covers [starts[n], ends[n]).
+     *
+     * @param starts
+     * @param ends
+     * @param chunkSearch
+     * @param stop
+     * @return
+     */
+    public static ForkJoinTask<List<ChunkStatistics>> submit(final long[] starts, final long[] ends,
+                                                             final ChunkSearch chunkSearch,
+                                                             final AtomicBoolean stop) {
+        ChunkStatistics[] statistics = new ChunkStatistics[starts.length];
+        ChunkTask root = new ChunkTask(0, statistics.length, starts, ends, chunkSearch, stop, statistics);
+        return searchPool.submit(ForkJoinTask.adapt(() -> {
+            root.invoke();
+            List<ChunkStatistics> result = new ArrayList<>();
+            for(ChunkStatistics chunkStatistics : statistics) {
+                if(chunkStatistics != null) {
+                    result.add(chunkStatistics);
+                }
+            }
+            return result;
+        }));
+    }
+
+    /**
+     * Searches all the chunks and waits for the result.
+     *
+     * @param offsetLimit
+     * @param chunkSize
+     * @param chunkSearch
+     * @param stop
+     * @return
+     * @throws IOException
+     */
+    public static List<ChunkStatistics> invoke(final Long offsetLimit, final Long chunkSize,
+                                               final ChunkSearch chunkSearch, final AtomicBoolean stop)
+            throws IOException {
+        return get(submit(offsetLimit, chunkSize, chunkSearch, stop), stop);
+    }
+
+    /**
+     * Searches the given chunks and waits for the result. Chunk n covers [starts[n], ends[n]).
+     *
+     * @param starts
+     * @param ends
+     * @param chunkSearch
+     * @param stop
+     * @return
+     * @throws IOException
+     */
+    public static List<ChunkStatistics> invoke(final long[] starts, final long[] ends,
+                                               final ChunkSearch chunkSearch, final AtomicBoolean stop)
+            throws IOException {
+        return get(submit(starts, ends, chunkSearch, stop), stop);
+    }
+
+    /**
+     * Waits for a submitted search.
+     *
+     * @param search
+     * @param stop
+     * @return
+     * @throws IOException
+     */
+    public static List<ChunkStatistics> get(ForkJoinTask<List<ChunkStatistics>> search, AtomicBoolean stop)
+            throws IOException {
+        try {
+            return search.get();
+        } catch (InterruptedException e) {
+            stop.set(true);
+            search.quietlyJoin();
+            Thread.currentThread().interrupt();
+            throw new IOException("search interrupted");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Returns the original error of a failed chunk.
+     *
+     * @param e
+     * @return
+     */
+    public static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        while(cause instanceof ChunkException || cause instanceof ExecutionException) {
+            cause = cause.getCause();
+        }
+        if(cause instanceof IOException) {
+            return IOException.class.cast(cause);
+        }
+        return new IOException(cause);
+    }
+
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Integer firstChunk;
+        private final Integer lastChunk;
+        private final long[] starts;
+        private final long[] ends;
+        private final ChunkSearch chunkSearch;
+        private final AtomicBoolean stop;
+        private final ChunkStatistics[] statistics;
+
+        ChunkTask(Integer firstChunk, Integer lastChunk, long[] starts, long[] ends, ChunkSearch chunkSearch,
+                  AtomicBoolean stop, ChunkStatistics[] statistics) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.starts = starts;
+            this.ends = ends;
+            this.chunkSearch = chunkSearch;
+            this.stop = stop;
+            this.statistics = statistics;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.stop.get()) {
+                return;
+            }
+            if(this.lastChunk - this.firstChunk > 1) {
+                /*
+                 * Splitting the chunks in halves, the idle threads will steal them. Both halves are always
+                 * joined, so the search is not done while any chunk still reads the file.
+                 */
+                Integer middle = (this.firstChunk + this.lastChunk) >>> 1;
+                ChunkTask first = new ChunkTask(this.firstChunk, middle, this.starts, this.ends, this.chunkSearch,
+                        this.stop, this.statistics);
+                ChunkTask second = new ChunkTask(middle, this.lastChunk, this.starts, this.ends, this.chunkSearch,
+                        this.stop, this.statistics);
+                second.fork();
+                first.quietlyInvoke();
+                second.quietlyJoin();
+                Throwable e = first.getException() != null ? first.getException() : second.getException();
+                if(e != null) {
+                    throw e instanceof RuntimeException ? RuntimeException.class.cast(e) : new ChunkException(e);
+                }
+                return;
+            }
+            if(this.lastChunk <= this.firstChunk) {
+                return;
+            }
+
+            Long start = this.starts[this.firstChunk];
+            Long end = this.ends[this.firstChunk];
+            Long startTime = System.nanoTime();
+            try {
+                Long matches = this.chunkSearch.search(this.firstChunk, start, end);
+                this.statistics[this.firstChunk] = new ChunkStatistics(this.firstChunk, start, end,
+                        System.nanoTime() - startTime, matches, Thread.currentThread().getName());
+            } catch (Exception e) {
+                this.stop.set(true);
+                throw new ChunkException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import io.PageStatistics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary of a search execution. The details of every chunk are useful to spot the imbalance between
+ * chunks, such as a chunk full of long lines or pages not present in the page cache.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class SearchStatistics {
+    private final Long matches;
+    private final Long bytes;
+    private final Long elapsedNanos;
+    private final Boolean limitReached;
+    private final List<ChunkStatistics> chunks;
+    private final PageStatistics pageStatistics;
+
+    /**
+     * SearchStatistics constructor.
+     *
+     * @param matches
+     * @param bytes
+     * @param elapsedNanos
+     * @param limitReached
+     */
+    public SearchStatistics(final Long matches, final Long bytes, final Long elapsedNanos,
+                            final Boolean limitReached) {
+        this(matches, bytes, elapsedNanos, limitReached, Collections.emptyList());
+    }
+
+    /**
+     * SearchStatistics constructor.
+     *
+     * @param matches
+     * @param bytes
+     * @param elapsedNanos
+     * @param limitReached
+     * @param chunks
+     */
+    public SearchStatistics(final Long matches, final Long bytes, final Long elapsedNanos,
+                            final Boolean limitReached, final List<ChunkStatistics> chunks) {
+        this(matches, bytes, elapsedNanos, limitReached, chunks, null);
+    }
+
+    /**
+     * SearchStatistics constructor.
+     *
+     * @param matches
+     * @param bytes
+     * @param elapsedNanos
+     * @param limitReached
+     * @param chunks
+     * @param pageStatistics
+     */
+    public SearchStatistics(final Long matches, final Long bytes, final Long elapsedNanos,
+                            final Boolean limitReached, final List<ChunkStatistics> chunks,
+                            final PageStatistics pageStatistics) {
+        this.matches = matches;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.limitReached = limitReached;
+        this.chunks = chunks;
+        this.pageStatistics = pageStatistics;
+    }
+
+    /**
+     * Returns a copy of the statistics with the page statistics of the search.
+     *
+     * @param pageStatistics
+     * @return
+     */
+    public SearchStatistics withPageStatistics(final PageStatistics pageStatistics) {
+        return new SearchStatistics(this.matches, this.bytes, this.elapsedNanos, this.limitReached, this.chunks,
+                pageStatistics);
+    }
+
+    /**
+     * Returns the number of matches delivered to the consumer.
+     *
+     * @return
+     */
+    public Long getMatches() {
+        return this.matches;
+    }
+
+    /**
+     * Returns the size of the searched data.
+     *
+     * @return
+     */
+    public Long getBytes() {
+        return this.bytes;
+    }
+
+    public Long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Returns true if the search was stopped because the maximum number of matches was delivered.
+     *
+     * @return
+     */
+    public Boolean isLimitReached() {
+        return this.limitReached;
+    }
+
+    /**
+     * Returns the details of every chunk, in the file order. It is empty when the search was stopped
+     * before scanning all the chunks.
+     *
+     * @return
+     */
+    public List<ChunkStatistics> getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Returns the scanned bytes per second.
+     *
+     * @return
+     */
+    public Long getBytesPerSecond() {
+        return this.elapsedNanos > 0 ? Double.valueOf(this.bytes * 1e9 / this.elapsedNanos).longValue() : 0L;
+    }
+
+    /**
+     * Returns the time every thread spent scanning chunks, by thread name.
+     *
+     * @return
+     */
+    public Map<String, Long> getThreadNanos() {
+        Map<String, Long> threadNanos = new TreeMap<>();
+        for(ChunkStatistics chunk : this.chunks) {
+            threadNanos.merge(chunk.getThread(), chunk.getElapsedNanos(), Long::sum);
+        }
+        return threadNanos;
+    }
+
+    /**
+     * Returns the page faults during the search and the residency of the mapped file at the end of it, or null
+     * if they were not measured.
+     *
+     * @return
+     */
+    public PageStatistics getPageStatistics() {
+        return this.pageStatistics;
+    }
+
+    /**
+     * Returns the time spent by the slowest chunk.
+     *
+     * @return
+     */
+    public Long getMaxChunkNanos() {
+        Long max = 0L;
+        for(ChunkStatistics chunk : this.chunks) {
+            max = Math.max(max, chunk.getElapsedNanos());
+        }
+        return max;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package file;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds text matches directly over the bytes of a buffer, so no line has to be decoded unless it
+ * contains a match.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public interface TextMatcher {
+
+    /**
+     * Returns the absolute position of the first match found completely within the [from, to) range of
+     * the buffer, or -1 if there is none.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    int indexOf(ByteBuffer buffer, int from, int to);
+
+    /**
+     * Returns the patterns found within a matching line. Matchers searching a single pattern return an
+     * empty list.
+     *
+     * @param buffer
+     * @param lineStart
+     * @param lineEnd
+     * @return
+     */
+    default List<String> matchedPatterns(ByteBuffer buffer, int lineStart, int lineEnd) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns a set of literals such that every matching line contains at least one of them, or null if the
+     * matcher cannot tell. It allows an index to discard the regions without any of the literals.
+     *
+     * @return
+     */
+    default List<byte[]> requiredLiterals() {
+        return null;
+    }
+}
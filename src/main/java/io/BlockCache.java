@@ -0,0 +1,395 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the data blocks read from the data files in memory, so the reads of hot documents do not touch the disk.
+ *
+ * The blocks are held in frames of a single direct buffer, off the heap, and the cache is bounded by the number of
+ * frames. The eviction follows the 2Q policy, which resists scans: a block read for the first time enters a FIFO
+ * queue holding about a quarter of the frames, and only a block read again after leaving that queue (whose key is
+ * still remembered) enters the main LRU queue. A scan over many blocks cycles through the FIFO queue without
+ * evicting the blocks which are read often.
+ *
+ * A cached block is pinned by a {@link Page}, which must be closed when the data is copied. Pinned blocks are never
+ * evicted. The writes of the blocks go through {@link #update}, so the cache never returns stale data.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class BlockCache {
+    private static final BlockCache instance = new BlockCache(Configuration.BLOCK_CACHE_BLOCKS);
+    private final Integer capacity;
+    private final Integer maxIn;
+    private final Integer maxOut;
+    private final LinkedHashMap<BlockKey, Frame> in;
+    private final LinkedHashMap<BlockKey, Frame> main;
+    private final LinkedHashSet<BlockKey> out;
+    private final ArrayDeque<Frame> free;
+    private ByteBuffer memory;
+    private Integer frames;
+    private Long hits;
+    private Long misses;
+    private Long evictions;
+
+    /**
+     * A pinned block. Closing it unpins the block.
+     */
+    public static class Page implements Closeable {
+        private final BlockCache cache;
+        private final Frame frame;
+        private Boolean closed;
+
+        Page(BlockCache cache, Frame frame) {
+            this.cache = cache;
+            this.frame = frame;
+            this.closed = false;
+        }
+
+        /**
+         * Returns a read only view of the block data.
+         *
+         * @return
+         */
+        public ByteBuffer getData() {
+            ByteBuffer data = this.frame.data.asReadOnlyBuffer();
+            data.limit(this.frame.length);
+            return data;
+        }
+
+        public Integer getLength() {
+            return this.frame.length;
+        }
+
+        @Override
+        public void close() {
+            synchronized(this.cache) {
+                if(!this.closed) {
+                    this.closed = true;
+                    this.cache.unpin(this.frame);
+                }
+            }
+        }
+    }
+
+    private static class BlockKey {
+        private final String filename;
+        private final Long blockId;
+
+        BlockKey(String filename, Long blockId) {
+            this.filename = filename;
+            this.blockId = blockId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey key = (BlockKey) o;
+            return this.blockId.equals(key.blockId) && this.filename.equals(key.filename);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.filename.hashCode() * 31 + this.blockId.hashCode();
+        }
+    }
+
+    private static class Frame {
+        private final ByteBuffer data;
+        private BlockKey key;
+        private Integer length;
+        private Integer pins;
+
+        Frame(ByteBuffer data) {
+            this.data = data;
+            this.length = 0;
+            this.pins = 0;
+        }
+    }
+
+    /**
+     * BlockCache constructor.
+     *
+     * @param capacity
+     */
+    public BlockCache(Integer capacity) {
+        this.capacity = capacity;
+        this.maxIn = Math.max(1, capacity / 4);
+        this.maxOut = Math.max(1, capacity / 2);
+        this.in = new LinkedHashMap<>();
+        this.main = new LinkedHashMap<>();
+        this.out = new LinkedHashSet<>();
+        this.free = new ArrayDeque<>();
+        this.frames = 0;
+        this.hits = 0L;
+        this.misses = 0L;
+        this.evictions = 0L;
+    }
+
+    public static BlockCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Pins the block if it is cached. Returns null otherwise.
+     *
+     * @param filename
+     * @param blockId
+     * @return
+     */
+    public synchronized Page pin(String filename, Long blockId) {
+        BlockKey key = new BlockKey(filename, blockId);
+        Frame frame = this.main.remove(key);
+        if(frame != null) {
+            /*
+             * Moves the block to the most recently used end of the main queue
+             */
+            this.main.put(key, frame);
+        } else {
+            frame = this.in.get(key);
+        }
+        if(frame == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        frame.pins++;
+        return new Page(this, frame);
+    }
+
+    /**
+     * Caches a block read from the disk and pins it. Returns null if there is no frame available, when all of them
+     * are pinned.
+     *
+     * @param filename
+     * @param blockId
+     * @param data
+     * @param length
+     * @return
+     */
+    public synchronized Page put(String filename, Long blockId, byte[] data, Integer length) {
+        BlockKey key = new BlockKey(filename, blockId);
+        remove(key);
+        /*
+         * Checking the remembered keys first, as reclaiming a frame can forget them
+         */
+        Boolean reread = this.out.remove(key);
+        Frame frame = reclaim();
+        if(frame == null) {
+            if(reread) {
+                this.out.add(key);
+            }
+            return null;
+        }
+        frame.key = key;
+        write(frame, data, length);
+        if(reread) {
+            this.main.put(key, frame);
+        } else {
+            this.in.put(key, frame);
+        }
+        frame.pins++;
+        return new Page(this, frame);
+    }
+
+    /**
+     * Writes through a block written to the disk, replacing the cached data if the block is cached.
+     *
+     * @param filename
+     * @param blockId
+     * @param data
+     */
+    public synchronized void update(String filename, Long blockId, byte[] data) {
+        BlockKey key = new BlockKey(filename, blockId);
+        Frame frame = this.main.get(key);
+        if(frame == null) {
+            frame = this.in.get(key);
+        }
+        if(frame == null) {
+            return;
+        }
+        if(frame.pins == 0) {
+            write(frame, data, data.length);
+        } else {
+            /*
+             * The pinned data cannot change under its reader, the block is read again next time
+             */
+            remove(key);
+        }
+    }
+
+    /**
+     * Removes a block from the cache.
+     *
+     * @param filename
+     * @param blockId
+     */
+    public synchronized void invalidate(String filename, Long blockId) {
+        remove(new BlockKey(filename, blockId));
+    }
+
+    /**
+     * Removes every block of a file from the cache, for instance when the file is removed.
+     *
+     * @param filename
+     */
+    public synchronized void invalidate(String filename) {
+        List<BlockKey> keys = new ArrayList<>();
+        for(BlockKey key : this.in.keySet()) {
+            if(key.filename.equals(filename)) {
+                keys.add(key);
+            }
+        }
+        for(BlockKey key : this.main.keySet()) {
+            if(key.filename.equals(filename)) {
+                keys.add(key);
+            }
+        }
+        for(BlockKey key : keys) {
+            remove(key);
+        }
+        this.out.removeIf(key -> key.filename.equals(filename));
+    }
+
+    /**
+     * Removes every block from the cache. The pinned frames are reused when they are unpinned.
+     */
+    public synchronized void clear() {
+        List<BlockKey> keys = new ArrayList<>(this.in.keySet());
+        keys.addAll(this.main.keySet());
+        for(BlockKey key : keys) {
+            remove(key);
+        }
+        this.out.clear();
+    }
+
+    public synchronized Integer size() {
+        return this.in.size() + this.main.size();
+    }
+
+    public synchronized Integer getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized Long getHits() {
+        return this.hits;
+    }
+
+    public synchronized Long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized Long getEvictions() {
+        return this.evictions;
+    }
+
+    private void unpin(Frame frame) {
+        frame.pins--;
+        if(frame.pins == 0 && frame.key == null) {
+            this.free.add(frame);
+        }
+    }
+
+    private void remove(BlockKey key) {
+        Frame frame = this.in.remove(key);
+        if(frame == null) {
+            frame = this.main.remove(key);
+        }
+        if(frame != null) {
+            frame.key = null;
+            if(frame.pins == 0) {
+                this.free.add(frame);
+            }
+        }
+    }
+
+    private static void write(Frame frame, byte[] data, Integer length) {
+        ByteBuffer buffer = frame.data.duplicate();
+        buffer.clear();
+        buffer.put(data, 0, length);
+        frame.length = length;
+    }
+
+    /**
+     * Returns a free frame, evicting a block when all the frames are in use. The oldest block of the FIFO queue
+     * is evicted when the queue is over its share, and its key is remembered. Otherwise the least recently used
+     * block of the main queue is evicted.
+     */
+    private Frame reclaim() {
+        if(!this.free.isEmpty()) {
+            return this.free.poll();
+        }
+        if(this.frames < this.capacity) {
+            if(this.memory == null) {
+                this.memory = ByteBuffer.allocateDirect(this.capacity * Configuration.BLOCK_SIZE);
+            }
+            ByteBuffer data = this.memory.duplicate();
+            data.position(this.frames * Configuration.BLOCK_SIZE);
+            data.limit(data.position() + Configuration.BLOCK_SIZE);
+            this.frames++;
+            return new Frame(data.slice());
+        }
+        Frame frame = null;
+        if(this.in.size() > this.maxIn) {
+            frame = evict(this.in);
+            if(frame != null) {
+                this.out.add(frame.key);
+                if(this.out.size() > this.maxOut) {
+                    Iterator<BlockKey> iterator = this.out.iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        if(frame == null) {
+            frame = evict(this.main);
+        }
+        if(frame == null) {
+            frame = evict(this.in);
+        }
+        if(frame != null) {
+            this.evictions++;
+            frame.key = null;
+        }
+        return frame;
+    }
+
+    private static Frame evict(Map<BlockKey, Frame> queue) {
+        Iterator<Frame> iterator = queue.values().iterator();
+        while(iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if(frame.pins == 0) {
+                iterator.remove();
+                return frame;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of reusable buffers passed from a producer (a reader or a decompressor) to the search threads. A
+ * buffer is taken to fill it and released once it is scanned, so the memory of a search is bounded by the ring
+ * whatever the size of the input.
+ *
+ * The buffers are allocated the first time they are needed, up to the capacity of the ring. Buffers of a
+ * different size, grown for lines longer than a buffer, are not kept.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class BufferRing {
+    private final BlockingQueue<ByteBuffer> free;
+    private final AtomicInteger allocated;
+    private final Integer capacity;
+    private final Boolean direct;
+
+    /**
+     * BufferRing constructor.
+     *
+     * @param capacity
+     * @param direct
+     */
+    public BufferRing(Integer capacity, Boolean direct) {
+        this.free = new LinkedBlockingQueue<>();
+        this.allocated = new AtomicInteger(0);
+        this.capacity = capacity;
+        this.direct = direct;
+    }
+
+    /**
+     * Returns a free buffer, or null if all of them are in use.
+     *
+     * @return
+     */
+    public ByteBuffer poll() {
+        ByteBuffer buffer = this.free.poll();
+        if(buffer == null) {
+            if(this.allocated.incrementAndGet() > this.capacity) {
+                this.allocated.decrementAndGet();
+                return null;
+            }
+            buffer = this.direct ? ByteBuffer.allocateDirect(Configuration.READ_BUFFER_SIZE) :
+                    ByteBuffer.allocate(Configuration.READ_BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Waits for a free buffer, unless the search has been stopped.
+     *
+     * @param stop
+     * @return null if the search was stopped
+     * @throws IOException
+     */
+    public ByteBuffer take(AtomicBoolean stop) throws IOException {
+        try {
+            while(!stop.get()) {
+                ByteBuffer buffer = poll();
+                if(buffer == null) {
+                    buffer = this.free.poll(10, TimeUnit.MILLISECONDS);
+                }
+                if(buffer != null) {
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("search interrupted");
+        }
+    }
+
+    /**
+     * Returns the buffer to the ring.
+     *
+     * @param buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if(buffer.capacity() == Configuration.READ_BUFFER_SIZE && buffer.isDirect() == this.direct) {
+            this.free.offer(buffer);
+        }
+    }
+
+    public Integer getCapacity() {
+        return this.capacity;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+import file.LineScanner;
+import file.TextMatcher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Base of the backends reading the file into buffers instead of mapping it.
+ *
+ * A region is read in blocks of the buffer size. Every block is scanned up to its last complete line, and the
+ * partial line at the end is moved to the start of the buffer before reading the next block. A line longer
+ * than the buffer makes the buffer grow for that region. The buffers are taken from a pool, so a search does
+ * not allocate a buffer per region.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public abstract class BufferedReadBackend implements ReadBackend {
+    private final Queue<ByteBuffer> pool;
+    protected final File file;
+    protected final Long size;
+
+    /**
+     * Reads the data of a region.
+     */
+    protected interface RegionReader extends Closeable {
+
+        /**
+         * Reads data from the file position into the remaining space of the buffer. Returns -1 at the end of
+         * the file.
+         *
+         * @param buffer
+         * @param position
+         * @return
+         * @throws IOException
+         */
+        int read(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    /**
+     * BufferedReadBackend constructor.
+     *
+     * @param f
+     */
+    protected BufferedReadBackend(File f) {
+        this.file = f;
+        this.size = f.length();
+        this.pool = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Opens a reader for a region starting at the file position.
+     *
+     * @param position
+     * @return
+     * @throws IOException
+     */
+    protected abstract RegionReader openRegion(long position) throws IOException;
+
+    /**
+     * Allocates a new buffer for the pool.
+     *
+     * @param capacity
+     * @return
+     */
+    protected abstract ByteBuffer allocate(Integer capacity);
+
+    @Override
+    public Long getOffsetLimit() {
+        return this.size;
+    }
+
+    @Override
+    public boolean scan(long start, long end, TextMatcher matcher, LineScanner.LineHandler handler)
+            throws IOException {
+        end = Math.min(end, this.size);
+        if(start >= end) {
+            return true;
+        }
+
+        /*
+         * Reading from the byte before the region, the first owned line starts after its first EOL
+         */
+        long offset = start > 0 ? start - 1 : 0;
+        boolean aligned = start == 0;
+        ByteBuffer pooled = acquire();
+        ByteBuffer buffer = pooled;
+        RegionReader reader = openRegion(offset);
+        try {
+            while(true) {
+                while(buffer.hasRemaining() && offset + buffer.position() < this.size) {
+                    if(reader.read(buffer, offset + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                int limit = buffer.position();
+                boolean eof = offset + limit >= this.size || limit < buffer.capacity();
+
+                int from = 0;
+                if(!aligned) {
+                    int eol = LineScanner.indexOfEOL(buffer, 0, limit);
+                    if(eol < 0) {
+                        if(eof) {
+                            return true;
+                        }
+                        offset += limit;
+                        buffer.clear();
+                        continue;
+                    }
+                    from = eol + 1;
+                    aligned = true;
+                }
+                if(end - offset <= from) {
+                    return true;
+                }
+
+                int usable = eof ? limit : LineScanner.lastIndexOfEOL(buffer, from, limit) + 1;
+                if(usable <= from) {
+                    /*
+                     * The line does not fit in the buffer
+                     */
+                    buffer = discard(buffer, from, limit);
+                    offset += from;
+                    continue;
+                }
+
+                ByteBuffer view = buffer.duplicate();
+                view.limit(usable);
+                long viewOffset = offset;
+                int scanEnd = (int) Math.min(end - offset, usable);
+                if(!LineScanner.scan(view, from, scanEnd, matcher, (b, lineStart, lineEnd, position) ->
+                        handler.onLine(b, lineStart, lineEnd, viewOffset + position))) {
+                    return false;
+                }
+                if(end - offset <= usable || eof) {
+                    return true;
+                }
+
+                /*
+                 * Keeping the partial line for the next block
+                 */
+                buffer.limit(limit);
+                buffer.position(usable);
+                buffer.compact();
+                offset += usable;
+            }
+        } finally {
+            reader.close();
+            release(pooled);
+        }
+    }
+
+    /**
+     * Drops the [0, from) range of the buffer, growing it if the rest fills the whole buffer.
+     *
+     * @param buffer
+     * @param from
+     * @param limit
+     * @return
+     */
+    private ByteBuffer discard(ByteBuffer buffer, int from, int limit) {
+        buffer.limit(limit);
+        buffer.position(from);
+        if(from > 0) {
+            buffer.compact();
+            return buffer;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = this.pool.poll();
+        if(buffer == null) {
+            buffer = allocate(Configuration.READ_BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        if(this.pool.size() < Configuration.READ_BUFFER_POOL_SIZE) {
+            this.pool.offer(buffer);
+        }
+    }
+}
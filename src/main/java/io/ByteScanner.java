@@ -0,0 +1,115 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds bytes within a buffer 8 bytes at a time, using
+ * <a href="https://graphics.stanford.edu/~seander/bithacks.html#ZeroInWord">SWAR</a> bit tricks over longs
+ * instead of comparing every byte.
+ *
+ * Every long read from the buffer is XORed with the wanted byte repeated 8 times, so the matching bytes become
+ * zero. The zero bytes of the word are then flagged in their high bit without any carry between bytes, and the
+ * first flag gives the position. The bytes before the first aligned word and after the last one are compared
+ * one by one.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class ByteScanner {
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * Returns the position of the first occurrence of the byte within [from, to), or -1.
+     *
+     * @param buffer
+     * @param b
+     * @param from
+     * @param to
+     * @return
+     */
+    public static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        long pattern = (b & 0xffL) * ONES;
+        int i = from;
+        /*
+         * Byte by byte until the next aligned word
+         */
+        for(int aligned = Math.min(to, (from + 7) & ~7); i < aligned; i++) {
+            if(buffer.get(i) == b) {
+                return i;
+            }
+        }
+        for(; i + 8 <= to; i += 8) {
+            long zeros = zeroBytes(buffer.getLong(i) ^ pattern);
+            if(zeros != 0) {
+                return i + (bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros)) / 8;
+            }
+        }
+        for(; i < to; i++) {
+            if(buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the last occurrence of the byte within [from, to), or -1.
+     *
+     * @param buffer
+     * @param b
+     * @param from
+     * @param to
+     * @return
+     */
+    public static int lastIndexOf(ByteBuffer buffer, byte b, int from, int to) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        long pattern = (b & 0xffL) * ONES;
+        int i = to;
+        for(int aligned = Math.max(from, to & ~7); i > aligned; i--) {
+            if(buffer.get(i - 1) == b) {
+                return i - 1;
+            }
+        }
+        for(; i - 8 >= from; i -= 8) {
+            long zeros = zeroBytes(buffer.getLong(i - 8) ^ pattern);
+            if(zeros != 0) {
+                return i - 1 - (bigEndian ? Long.numberOfTrailingZeros(zeros) : Long.numberOfLeadingZeros(zeros)) / 8;
+            }
+        }
+        for(; i > from; i--) {
+            if(buffer.get(i - 1) == b) {
+                return i - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a word with the high bit set for every zero byte of the value, and nothing else. Unlike the
+     * usual (v - 0x01..) & ~v trick, no borrow crosses the bytes, so every flag is exact.
+     *
+     * @param value
+     * @return
+     */
+    private static long zeroBytes(long value) {
+        return ~(((value & LOW_BITS) + LOW_BITS) | value | LOW_BITS);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, the one used by iSCSI, ext4 and most storage formats, as Java 8 only has the
+ * CRC-32 of zip.
+ *
+ * The table driven implementation processes 8 bytes per step (slicing-by-8). On Java 9 and later
+ * {@link #create()} returns java.util.zip.CRC32C instead, which uses the CRC32 instructions of the processor.
+ * Both compute the same value.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class CRC32C implements Checksum {
+    private static final int POLYNOMIAL = 0x82f63b78;
+    private static final int[][] TABLE = new int[8][256];
+    private static final Constructor<?> INTRINSIC;
+    private int crc;
+
+    static {
+        for(int n = 0; n < 256; n++) {
+            int c = n;
+            for(int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+            }
+            TABLE[0][n] = c;
+        }
+        for(int n = 0; n < 256; n++) {
+            for(int k = 1; k < 8; k++) {
+                TABLE[k][n] = (TABLE[k - 1][n] >>> 8) ^ TABLE[0][TABLE[k - 1][n] & 0xff];
+            }
+        }
+
+        Constructor<?> intrinsic;
+        try {
+            intrinsic = Class.forName("java.util.zip.CRC32C").getConstructor();
+        } catch (ReflectiveOperationException e) {
+            intrinsic = null;
+        }
+        INTRINSIC = intrinsic;
+    }
+
+    public CRC32C() {
+        reset();
+    }
+
+    /**
+     * Returns the fastest CRC-32C implementation available.
+     *
+     * @return
+     */
+    public static Checksum create() {
+        if(INTRINSIC != null) {
+            try {
+                return Checksum.class.cast(INTRINSIC.newInstance());
+            } catch (ReflectiveOperationException e) {
+                /*
+                 * Using the table driven implementation
+                 */
+            }
+        }
+        return new CRC32C();
+    }
+
+    /**
+     * Returns the checksum of the remaining bytes of the buffer, without moving its position.
+     *
+     * @param buffer
+     * @return
+     */
+    public static Integer checksum(ByteBuffer buffer) {
+        Checksum checksum = create();
+        update(checksum, buffer);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Adds the remaining bytes of the buffer to the checksum, without moving its position. A heap buffer is
+     * read in place, a direct one through a small array.
+     *
+     * @param checksum
+     * @param buffer
+     */
+    public static void update(Checksum checksum, ByteBuffer buffer) {
+        if(buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        byte[] chunk = new byte[Math.min(8192, source.remaining())];
+        while(source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            checksum.update(chunk, 0, length);
+        }
+    }
+
+    @Override
+    public void update(int b) {
+        this.crc = (this.crc >>> 8) ^ TABLE[0][(this.crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = this.crc;
+        int end = off + len;
+        for(; off + 8 <= end; off += 8) {
+            c ^= (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+            c = TABLE[7][c & 0xff] ^ TABLE[6][(c >>> 8) & 0xff] ^ TABLE[5][(c >>> 16) & 0xff] ^
+                    TABLE[4][c >>> 24] ^ TABLE[3][b[off + 4] & 0xff] ^ TABLE[2][b[off + 5] & 0xff] ^
+                    TABLE[1][b[off + 6] & 0xff] ^ TABLE[0][b[off + 7] & 0xff];
+        }
+        for(; off < end; off++) {
+            c = (c >>> 8) ^ TABLE[0][(c ^ b[off]) & 0xff];
+        }
+        this.crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~this.crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        this.crc = 0xffffffff;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses the data of the records. The codec id is stored in the record header, so every record is
+ * decompressed with the codec which wrote it. The codecs are looked up in {@link CompressionCodecs}.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns the id of the codec, stored in the record header.
+     *
+     * @return
+     */
+    Integer getId();
+
+    /**
+     * Compresses the data into the output array. Returns the compressed length, or -1 if the compressed data does
+     * not fit in the output length, which lets the caller give up as soon as the compression does not pay off.
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param output
+     * @param outputOffset
+     * @param outputLength
+     * @return
+     */
+    Integer compress(byte[] data, int offset, int length, byte[] output, int outputOffset, int outputLength);
+
+    /**
+     * Decompresses the remaining bytes of the buffer into the output array, which must be filled exactly.
+     *
+     * @param data
+     * @param output
+     * @throws IOException
+     */
+    void decompress(ByteBuffer data, byte[] output) throws IOException;
+}
@@ -0,0 +1,53 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the record compression codecs. The ids are part of the disk format and cannot be reused.
+ *
+ * The records compressed with {@link #DEFLATE_DICTIONARY} depend on the dictionary of their data file, so there is
+ * no codec registered for them here. They are decoded with the codec of the {@link FileDataDictionary}.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class CompressionCodecs {
+    public static final Integer NONE = 0;
+    public static final Integer DEFLATE = 1;
+    public static final Integer LZ = 2;
+    public static final Integer DEFLATE_DICTIONARY = 3;
+    private static final Map<Integer, CompressionCodec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        codecs.put(DEFLATE, new DeflateCompressionCodec(Configuration.RECORD_DEFLATE_LEVEL));
+        codecs.put(LZ, new LZCompressionCodec());
+    }
+
+    /**
+     * Returns the codec with the id, or null if there is none (as for {@link #NONE}).
+     *
+     * @param id
+     * @return
+     */
+    public static CompressionCodec get(Integer id) {
+        return codecs.get(id);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the records with raw deflate streams, at a level from 1 (fastest) to 9 (smallest). Every thread
+ * reuses its own deflater and inflater, which hold native memory and are expensive to create.
+ *
+ * A codec with a preset dictionary starts every stream as if the dictionary preceded the data, so a small record
+ * can refer to the strings it shares with the dictionary (see {@link FileDataDictionary}).
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+    private final ThreadLocal<Deflater> deflater;
+    private final ThreadLocal<Inflater> inflater;
+    private final byte[] dictionary;
+
+    public DeflateCompressionCodec(Integer level) {
+        this(level, null);
+    }
+
+    public DeflateCompressionCodec(Integer level, byte[] dictionary) {
+        if(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid deflate level [" + level + "]");
+        }
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        this.inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer getId() {
+        return this.dictionary == null ? CompressionCodecs.DEFLATE : CompressionCodecs.DEFLATE_DICTIONARY;
+    }
+
+    @Override
+    public Integer compress(byte[] data, int offset, int length, byte[] output, int outputOffset, int outputLength) {
+        Deflater deflater = this.deflater.get();
+        deflater.reset();
+        if(this.dictionary != null) {
+            deflater.setDictionary(this.dictionary);
+        }
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int compressed = 0;
+        while(!deflater.finished()) {
+            if(compressed == outputLength) {
+                return -1;
+            }
+            compressed += deflater.deflate(output, outputOffset + compressed, outputLength - compressed);
+        }
+        return compressed;
+    }
+
+    @Override
+    public void decompress(ByteBuffer data, byte[] output) throws IOException {
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        if(this.dictionary != null) {
+            inflater.setDictionary(this.dictionary);
+        }
+        byte[] input;
+        int offset;
+        if(data.hasArray()) {
+            input = data.array();
+            offset = data.arrayOffset() + data.position();
+        } else {
+            input = new byte[data.remaining()];
+            data.duplicate().get(input);
+            offset = 0;
+        }
+        inflater.setInput(input, offset, data.remaining());
+        try {
+            int length = 0;
+            while(!inflater.finished()) {
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if(inflated == 0 && (length == output.length || inflater.needsInput() ||
+                        inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if(length != output.length || !inflater.finished()) {
+                throw new IOException("corrupt compressed record");
+            }
+        } catch(DataFormatException e) {
+            throw new IOException("corrupt compressed record", e);
+        }
+    }
+}
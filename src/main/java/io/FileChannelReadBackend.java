@@ -0,0 +1,74 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the file with positional reads (<a href="http://man7.org/linux/man-pages/man2/pread.2.html">pread</a>)
+ * into pooled direct buffers. The channel is shared by all the threads, as positional reads do not change the
+ * channel position.
+ *
+ * Unlike mmap, every block costs a system call and a copy, but no page faults, which matters when the page
+ * cache is cold or under memory pressure.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class FileChannelReadBackend extends BufferedReadBackend {
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    /**
+     * FileChannelReadBackend constructor.
+     *
+     * @param f
+     * @throws IOException
+     */
+    public FileChannelReadBackend(File f) throws IOException {
+        super(f);
+        this.raf = new RandomAccessFile(f, "r");
+        this.channel = this.raf.getChannel();
+    }
+
+    @Override
+    protected RegionReader openRegion(long position) {
+        return new RegionReader() {
+            @Override
+            public int read(ByteBuffer buffer, long position) throws IOException {
+                return FileChannelReadBackend.this.channel.read(buffer, position);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    protected ByteBuffer allocate(Integer capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.raf.close();
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+import file.FileDataBlock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The compression dictionary of a data file. Small documents compress poorly on their own, but similar documents
+ * share most of their strings, so each record is compressed with deflate against a preset dictionary of those
+ * strings, and every record can still be read on its own.
+ *
+ * The dictionary is stored in the first block of the data file, a header block written when the file is created:
+ *
+ * <pre>
+ *   magic (4) | version (1) | reserved (3) | dictionary length (4) | CRC-32C of the dictionary (4) | dictionary
+ * </pre>
+ *
+ * The header starts empty. The first records written to the file are sampled, until
+ * {@link Configuration#RECORD_DICTIONARY_SAMPLE_SIZE} bytes, and the dictionary trained from them is written
+ * once. It never changes afterwards, as the following records depend on it. The files written before the
+ * dictionaries have no header block, and their records are read as usual.
+ *
+ * The dictionaries are cached by file name, so the readers load each header block only once.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class FileDataDictionary {
+    public static final Integer HEADER_SIZE = 16;
+    public static final Integer MAX_SIZE = Configuration.BLOCK_SIZE - HEADER_SIZE;
+    private static final int MAGIC = 0xfd444943;
+    private static final int VERSION = 1;
+    /*
+     * Training looks for strings shared by several samples, counting substrings of this length, and picks segments
+     * of the samples containing most of them
+     */
+    private static final int NGRAM = 8;
+    private static final int SEGMENT = 64;
+    private static final int SEGMENT_STEP = 16;
+    private static final Map<String, FileDataDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final String filename;
+    private final Boolean headerBlock;
+    private final byte[] dictionary;
+    private final CompressionCodec codec;
+    private final List<byte[]> samples;
+    private Integer sampleSize;
+
+    private FileDataDictionary(String filename, Boolean headerBlock, byte[] dictionary) {
+        this.filename = filename;
+        this.headerBlock = headerBlock;
+        this.dictionary = dictionary;
+        this.codec = dictionary == null || dictionary.length == 0 ? null :
+                new DeflateCompressionCodec(Configuration.RECORD_DEFLATE_LEVEL, dictionary);
+        this.samples = new ArrayList<>();
+        this.sampleSize = 0;
+    }
+
+    /**
+     * Returns the dictionary of a data file, reading its header block the first time.
+     *
+     * @param filename
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static FileDataDictionary get(String filename) throws IOException, InterruptedException {
+        FileDataDictionary dictionary = dictionaries.get(filename);
+        if(dictionary == null) {
+            FileDataReader reader = new FileDataReader(filename);
+            byte[] data = null;
+            if(reader.countDataBlocks() > 0) {
+                data = decodeHeaderBlock(reader.getDataBlocks(0L, 0, 0, Configuration.BLOCK_SIZE).get(0).getData());
+            }
+            dictionary = new FileDataDictionary(filename, data != null, data);
+            FileDataDictionary previous = dictionaries.putIfAbsent(filename, dictionary);
+            if(previous != null) {
+                dictionary = previous;
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Prepares a new, empty, data file. The empty header block is written when
+     * {@link Configuration#RECORD_DICTIONARY} is enabled, and the records will start in the next block. The blocks
+     * cached from a previous file with the same name are dropped.
+     *
+     * @param filename
+     * @throws IOException
+     */
+    public static void initialize(String filename) throws IOException {
+        BlockCache.getInstance().invalidate(filename);
+        if(Configuration.RECORD_DICTIONARY) {
+            writeHeaderBlock(filename, new byte[0]);
+            dictionaries.put(filename, new FileDataDictionary(filename, true, new byte[0]));
+        } else {
+            dictionaries.put(filename, new FileDataDictionary(filename, false, null));
+        }
+    }
+
+    /**
+     * Forgets the cached dictionaries, for instance when the data files are removed.
+     */
+    public static void clear() {
+        dictionaries.clear();
+    }
+
+    /**
+     * Samples the data of a record written to the file, while the file has a header block and no dictionary. The
+     * dictionary is trained and written when there are enough samples.
+     *
+     * @param data
+     * @throws IOException
+     */
+    public void sample(byte[] data) throws IOException {
+        if(!this.headerBlock || this.codec != null) {
+            return;
+        }
+        byte[] trained;
+        synchronized(this.samples) {
+            if(this.sampleSize >= Configuration.RECORD_DICTIONARY_SAMPLE_SIZE) {
+                return;
+            }
+            this.samples.add(data);
+            this.sampleSize += data.length;
+            if(this.sampleSize < Configuration.RECORD_DICTIONARY_SAMPLE_SIZE) {
+                return;
+            }
+            trained = train(this.samples, MAX_SIZE);
+            this.samples.clear();
+        }
+        writeHeaderBlock(this.filename, trained);
+        dictionaries.put(this.filename, new FileDataDictionary(this.filename, true, trained));
+    }
+
+    /**
+     * Returns the codec compressing with this dictionary, or null when the file has no dictionary yet.
+     *
+     * @return
+     */
+    public CompressionCodec getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Returns the dictionary bytes, empty when the file has a header block without a dictionary yet, or null when
+     * the file has no header block.
+     *
+     * @return
+     */
+    public byte[] getDictionary() {
+        return this.dictionary;
+    }
+
+    public Boolean hasHeaderBlock() {
+        return this.headerBlock;
+    }
+
+    /**
+     * Builds a dictionary of up to size bytes from samples of the data. The substrings of {@link #NGRAM} bytes are
+     * counted by the number of samples containing them, and the segments of the samples with the most shared
+     * substrings not yet in the dictionary are picked greedily. The best segments go at the end of the dictionary,
+     * where they are closer to the data and cheaper to refer to.
+     *
+     * @param samples
+     * @param size
+     * @return
+     */
+    public static byte[] train(List<byte[]> samples, Integer size) {
+        Map<Long, int[]> frequencies = new HashMap<>();
+        for(int n = 0; n < samples.size(); n++) {
+            byte[] sample = samples.get(n);
+            for(int i = 0; i + NGRAM <= sample.length; i++) {
+                int[] frequency = frequencies.computeIfAbsent(ngram(sample, i), k -> new int[2]);
+                if(frequency[1] != n + 1) {
+                    frequency[0]++;
+                    frequency[1] = n + 1;
+                }
+            }
+        }
+
+        /*
+         * Candidates are { score, sample, offset, length }
+         */
+        PriorityQueue<long[]> candidates = new PriorityQueue<>((a, b) -> Long.compare(b[0], a[0]));
+        for(int n = 0; n < samples.size(); n++) {
+            byte[] sample = samples.get(n);
+            for(int offset = 0; offset < sample.length; offset += SEGMENT_STEP) {
+                int length = Math.min(SEGMENT, sample.length - offset);
+                long score = score(sample, offset, length, frequencies, Collections.emptySet());
+                if(score > 0) {
+                    candidates.add(new long[] { score, n, offset, length });
+                }
+            }
+        }
+
+        List<long[]> segments = new ArrayList<>();
+        Set<Long> covered = new HashSet<>();
+        int total = 0;
+        while(total < size && !candidates.isEmpty()) {
+            long[] candidate = candidates.poll();
+            byte[] sample = samples.get((int) candidate[1]);
+            int offset = (int) candidate[2], length = (int) candidate[3];
+            long score = score(sample, offset, length, frequencies, covered);
+            if(score <= 0) {
+                continue;
+            } else if(!candidates.isEmpty() && score < candidates.peek()[0]) {
+                candidate[0] = score;
+                candidates.add(candidate);
+                continue;
+            }
+            for(int i = offset; i + NGRAM <= offset + length; i++) {
+                covered.add(ngram(sample, i));
+            }
+            segments.add(candidate);
+            total += length;
+        }
+
+        ByteBuffer dictionary = ByteBuffer.allocate(Math.min(total, size));
+        for(int i = segments.size() - 1; i >= 0; i--) {
+            long[] segment = segments.get(i);
+            int length = (int) segment[3];
+            int skip = Math.max(0, length - dictionary.remaining());
+            dictionary.put(samples.get((int) segment[1]), (int) segment[2] + skip, length - skip);
+        }
+        return dictionary.array();
+    }
+
+    private static long score(byte[] sample, int offset, int length, Map<Long, int[]> frequencies,
+                              Set<Long> covered) {
+        long score = 0;
+        for(int i = offset; i + NGRAM <= offset + length; i++) {
+            long ngram = ngram(sample, i);
+            int frequency = frequencies.get(ngram)[0];
+            if(frequency > 1 && !covered.contains(ngram)) {
+                score += frequency;
+            }
+        }
+        return score;
+    }
+
+    private static long ngram(byte[] data, int i) {
+        long value = 0;
+        for(int j = 0; j < NGRAM; j++) {
+            value = (value << 8) | (data[i + j] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Encodes the header block holding the dictionary.
+     *
+     * @param dictionary
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encodeHeaderBlock(byte[] dictionary) throws IOException {
+        if(dictionary.length > MAX_SIZE) {
+            throw new IOException("dictionary too long [" + dictionary.length + "]");
+        }
+        ByteBuffer block = ByteBuffer.allocate(Configuration.BLOCK_SIZE);
+        block.putInt(MAGIC);
+        block.put((byte) VERSION);
+        block.put(new byte[3]);
+        block.putInt(dictionary.length);
+        block.putInt(CRC32C.checksum(ByteBuffer.wrap(dictionary)));
+        block.put(dictionary);
+        return block.array();
+    }
+
+    /**
+     * Decodes the first block of a data file. Returns the dictionary, which is empty until it is trained, or null
+     * when the block is not a header block.
+     *
+     * @param block
+     * @return
+     * @throws IOException
+     */
+    public static byte[] decodeHeaderBlock(byte[] block) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(block);
+        if(block.length < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            return null;
+        }
+        if(header.get(4) != VERSION) {
+            throw new IOException("unknown dictionary version [" + header.get(4) + "]");
+        }
+        int length = header.getInt(8);
+        if(length < 0 || length > block.length - HEADER_SIZE) {
+            throw new IOException("invalid dictionary length [" + length + "]");
+        }
+        byte[] dictionary = new byte[length];
+        header.position(HEADER_SIZE);
+        header.get(dictionary);
+        if(CRC32C.checksum(ByteBuffer.wrap(dictionary)) != header.getInt(12)) {
+            throw new IOException("dictionary checksum mismatch");
+        }
+        return dictionary;
+    }
+
+    private static void writeHeaderBlock(String filename, byte[] dictionary) throws IOException {
+        byte[] block = encodeHeaderBlock(dictionary);
+        FileDataWriter writer = new FileDataWriter(filename);
+        if(!writer.writeDataBlocks(Collections.singletonList(new FileDataBlock(0L, block, 0, block.length)))) {
+            throw new IOException("cannot write the header block of [" + filename + "]");
+        }
+    }
+}
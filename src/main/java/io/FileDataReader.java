@@ -22,6 +22,7 @@ import file.FileDataBlock;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -29,13 +30,15 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 
 /**
- * It performs the data block reads from a data file.
+ * It performs the data block reads from a data file. The blocks are read through the {@link BlockCache}, and the
+ * file is only opened when a block is not cached.
  *
  * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
  */
 public class FileDataReader {
     private ReadWriteLock lock;
     private final File file;
+    private final String filename;
     private Long offset;
 
     /**
@@ -50,6 +53,7 @@ public class FileDataReader {
         sb.append(File.separator);
         sb.append(filename);
         this.file = new File(sb.toString());
+        this.filename = filename;
         if(!this.file.exists()) {
             throw new IOException("file not found");
         }
@@ -83,7 +87,8 @@ public class FileDataReader {
         if(this.file.length() == 0) {
             return dataBlocks;
         }
-        RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+        BlockCache cache = BlockCache.getInstance();
+        RandomAccessFile raf = null;
 
         try {
             /**
@@ -108,19 +113,55 @@ public class FileDataReader {
                     if((offset + bytesToRead) > documentLength) {
                         bytesToRead -= (offset + bytesToRead) - documentLength;
                     }
-                    byte[] data = new byte[bytesToRead];
-                    Integer position = FileDataBlock.getBlockPosition(initialBlock + counter);
-                    if(counter == 0) {
-                        position += initialOffset;
-                    }
-                    raf.seek(position);
-                    Integer bytesRead = raf.read(data);
+                    Long blockId = initialBlock + counter;
+                    Integer position = FileDataBlock.getBlockPosition(blockId);
+                    Integer start = counter == 0 ? initialOffset : 0;
+                    /*
+                     * The length is read under the lock, a writer can extend the file between the blocks
+                     */
+                    Long fileLength = this.file.length();
+                    Integer blockLength = Long.valueOf(Math.min(Configuration.BLOCK_SIZE,
+                            fileLength - position)).intValue();
+                    Integer bytesRead = Math.min(bytesToRead, blockLength - start);
                     if(bytesRead <= 0) {
                         break;
                     }
+
+                    /*
+                     * A cached block shorter or longer than the file block was changed by other means, and it
+                     * is read again
+                     */
+                    BlockCache.Page page = cache.pin(this.filename, blockId);
+                    if(page != null && !page.getLength().equals(blockLength)) {
+                        page.close();
+                        cache.invalidate(this.filename, blockId);
+                        page = null;
+                    }
+                    byte[] data = new byte[bytesRead];
+                    if(page == null) {
+                        if(raf == null) {
+                            raf = new RandomAccessFile(this.file, "r");
+                        }
+                        byte[] block = new byte[blockLength];
+                        raf.seek(position);
+                        raf.readFully(block);
+                        System.arraycopy(block, start, data, 0, bytesRead);
+                        page = cache.put(this.filename, blockId, block, blockLength);
+                        if(page != null) {
+                            page.close();
+                        }
+                    } else {
+                        try {
+                            ByteBuffer cached = page.getData();
+                            cached.position(start);
+                            cached.get(data);
+                        } finally {
+                            page.close();
+                        }
+                    }
                     offset += bytesRead;
 
-                    FileDataBlock fdb = new FileDataBlock(initialBlock + counter, data, 0, bytesRead);
+                    FileDataBlock fdb = new FileDataBlock(blockId, data, 0, bytesRead);
                     dataBlocks.add(fdb);
                 } finally {
                     /*
@@ -130,7 +171,9 @@ public class FileDataReader {
                 }
             }
         } finally {
-            raf.close();
+            if(raf != null) {
+                raf.close();
+            }
         }
 
         return dataBlocks;
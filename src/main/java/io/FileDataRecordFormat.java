@@ -16,19 +16,52 @@
  */
 package io;
 
+import conf.Configuration;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.zip.Checksum;
 
 /**
- * Manages the data file format. Uses Base64 in order to avoid encoding issues (However,
- * I'm not sure how relevant it is).
+ * Manages the data file format.
+ *
+ * Version 1 wrapped every record in a text header and Base64 (to avoid encoding issues, at the cost of a third
+ * more bytes). Version 2 is a binary envelope with a fixed header followed by the raw key and data:
+ *
+ * <pre>
+ *   magic (4) | version (1) | flags (1) | key length (2) | data length (4) | CRC-32C of key and data (4)
+ * </pre>
+ *
+ * The integers are big endian. The flags are reserved and must be 0. Version 3 uses the flags byte for the
+ * compression codec (see {@link CompressionCodecs}) and stores the compressed data, whose length is the data length
+ * of the header, followed by the uncompressed length:
+ *
+ * <pre>
+ *   magic (4) | version (1) | codec (1) | key length (2) | data length (4) | CRC-32C of the header and the
+ *   key and data (4) | uncompressed length (4)
+ * </pre>
+ *
+ * The checksum also covers the header fields after the magic, so corruption of the lengths or of the data is
+ * detected before decompressing. The records compressed
+ * with the dictionary of their data file need it to be decoded (see {@link FileDataDictionary}). New records are written
+ * with {@link Configuration#RECORD_FORMAT_VERSION}, and all the versions are recognized when reading.
  *
  * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
  */
 public class FileDataRecordFormat {
+    public static final Integer VERSION_BASE64 = 1;
+    public static final Integer VERSION_BINARY = 2;
+    public static final Integer VERSION_COMPRESSED = 3;
+    public static final Integer HEADER_SIZE = 16;
+    public static final Integer COMPRESSED_HEADER_SIZE = 20;
+    private static final int MAGIC = 0xfd524543;
+    private static final byte[] BASE64_HEADER = "===== record n:\"".getBytes();
 
     /**
-     * Decode the on disk format and retrieves the data.
+     * Encodes the data into the disk format.
      *
      * @param name
      * @param data
@@ -36,13 +69,128 @@ public class FileDataRecordFormat {
      * @throws IOException
      */
     public static byte[] encode(String name, byte[] data) throws IOException {
+        return encode(name, data, Configuration.RECORD_FORMAT_VERSION);
+    }
+
+    /**
+     * Encodes the data into a version of the disk format.
+     *
+     * @param name
+     * @param data
+     * @param version
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(String name, byte[] data, Integer version) throws IOException {
+        if(VERSION_BASE64.equals(version)) {
+            return encodeBase64(name, data);
+        } else if(VERSION_COMPRESSED.equals(version)) {
+            return encodeCompressed(name, data, Configuration.RECORD_COMPRESSION);
+        } else if(!VERSION_BINARY.equals(version)) {
+            throw new IOException("unknown record format version [" + version + "]");
+        }
+        byte[] key = getKeyBytes(name);
+
+        Checksum checksum = CRC32C.create();
+        checksum.update(key, 0, key.length);
+        checksum.update(data, 0, data.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + data.length);
+        record.putInt(MAGIC);
+        record.put(VERSION_BINARY.byteValue());
+        record.put((byte) 0);
+        record.putShort((short) key.length);
+        record.putInt(data.length);
+        record.putInt((int) checksum.getValue());
+        record.put(key);
+        record.put(data);
+        return record.array();
+    }
+
+    /**
+     * Encodes the data into the disk format, compressed with the dictionary of the data file when it has one. The
+     * records of a file with a dictionary are written in the compressed version of the format, whatever
+     * {@link Configuration#RECORD_FORMAT_VERSION} is, as the file was created to hold them.
+     *
+     * @param name
+     * @param data
+     * @param dictionary
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(String name, byte[] data, FileDataDictionary dictionary) throws IOException {
+        if(dictionary != null && dictionary.getCodec() != null) {
+            return encodeCompressed(name, data, dictionary.getCodec(), Configuration.RECORD_DICTIONARY_MIN_SIZE);
+        }
+        return encode(name, data);
+    }
+
+    /**
+     * Encodes the data into the compressed version of the disk format. The data is stored uncompressed when it is
+     * smaller than {@link Configuration#RECORD_COMPRESSION_MIN_SIZE}, or when the compression does not save at
+     * least an eighth of it, which the codec detects before finishing.
+     *
+     * @param name
+     * @param data
+     * @param compression
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encodeCompressed(String name, byte[] data, Integer compression) throws IOException {
+        CompressionCodec codec = CompressionCodecs.get(compression);
+        if(codec == null && !CompressionCodecs.NONE.equals(compression)) {
+            throw new IOException("unknown record compression [" + compression + "]");
+        }
+        return encodeCompressed(name, data, codec, Configuration.RECORD_COMPRESSION_MIN_SIZE);
+    }
+
+    private static byte[] encodeCompressed(String name, byte[] data, CompressionCodec codec, Integer minSize)
+            throws IOException {
+        Integer compression = codec == null ? CompressionCodecs.NONE : codec.getId();
+        byte[] key = getKeyBytes(name);
+        byte[] record = new byte[COMPRESSED_HEADER_SIZE + key.length + data.length];
+        int dataOffset = COMPRESSED_HEADER_SIZE + key.length;
+        int storedLength = -1;
+        if(codec != null && data.length >= minSize) {
+            storedLength = codec.compress(data, 0, data.length, record, dataOffset, data.length - data.length / 8);
+        }
+        if(storedLength < 0) {
+            compression = CompressionCodecs.NONE;
+            storedLength = data.length;
+            System.arraycopy(data, 0, record, dataOffset, data.length);
+        }
+        System.arraycopy(key, 0, record, COMPRESSED_HEADER_SIZE, key.length);
+
+        ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(MAGIC);
+        header.put(VERSION_COMPRESSED.byteValue());
+        header.put(compression.byteValue());
+        header.putShort((short) key.length);
+        header.putInt(storedLength);
+        header.putInt(0);
+        header.putInt(data.length);
+        Checksum checksum = CRC32C.create();
+        checksum.update(record, 4, 8);
+        checksum.update(record, 16, 4 + key.length + storedLength);
+        header.putInt(12, (int) checksum.getValue());
+        return storedLength == data.length ? record : Arrays.copyOf(record, dataOffset + storedLength);
+    }
+
+    private static byte[] getKeyBytes(String name) throws IOException {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        if(key.length > 0xffff) {
+            throw new IOException("record key too long [" + key.length + "]");
+        }
+        return key;
+    }
+
+    private static byte[] encodeBase64(String name, byte[] data) throws IOException {
         /*
          * Base64 encoding is probably adding an extra overhead. However, I used it to avoid encoding errors.
          */
         Base64.Encoder encoder = Base64.getEncoder();
         ByteArrayOutputStream documentEnvelope = new ByteArrayOutputStream();
 
-        documentEnvelope.write("===== record n:\"".getBytes());
+        documentEnvelope.write(BASE64_HEADER);
         documentEnvelope.write(name.getBytes());
         documentEnvelope.write("\" sz:".getBytes());
         documentEnvelope.write(String.valueOf(data.length).getBytes());
@@ -55,33 +203,165 @@ public class FileDataRecordFormat {
     }
 
     /**
-     * Encodes the data into the final disk format.
+     * Decodes the on disk format and retrieves the data.
      *
      * @param data
      * @return
+     * @throws IOException
+     */
+    public static byte[] decode(byte[] data) throws IOException {
+        ByteBuffer payload = decode(ByteBuffer.wrap(data));
+        byte[] document = new byte[payload.remaining()];
+        payload.get(document);
+        return document;
+    }
+
+    /**
+     * Decodes the record starting at the position of the buffer. The data of a binary record is returned as a
+     * slice of the buffer, without copying it, once its checksum is verified. The data of a Base64 record or of a
+     * compressed record is decoded into a new buffer.
+     *
+     * @param record
+     * @return
+     * @throws IOException
      */
-    public static byte[] decode(byte[] data) {
-        Base64.Decoder decoder = Base64.getDecoder();
-        Integer offset = indexOf(data, "=====\n".getBytes());
-        offset += "=====\n".getBytes().length;
-        byte[] base64Document = new byte[(data.length - offset) - 1];
-        System.arraycopy(data, offset, base64Document, 0, base64Document.length);
-        return decoder.decode(base64Document);
+    public static ByteBuffer decode(ByteBuffer record) throws IOException {
+        return decode(record, null);
     }
 
-    private static Integer indexOf(byte[] data, byte[] match) {
-        for(int i = 0; i < data.length - match.length + 1; ++i) {
-            boolean found = true;
-            for(int j = 0; j < match.length; ++j) {
-                if (data[i + j] != match[j]) {
-                    found = false;
-                    break;
-                }
+    /**
+     * Decodes the record starting at the position of the buffer, with the dictionary of its data file for the
+     * records compressed with it.
+     *
+     * @param record
+     * @param dictionary
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer decode(ByteBuffer record, FileDataDictionary dictionary) throws IOException {
+        Integer version = getVersion(record);
+        if(VERSION_BASE64.equals(version)) {
+            int start = record.position();
+            int eol = ByteScanner.indexOf(record, (byte) '\n', start, record.limit());
+            if(eol < 0) {
+                throw new IOException("invalid record header");
+            }
+            int end = ByteScanner.indexOf(record, (byte) '\n', eol + 1, record.limit());
+            ByteBuffer base64Document = record.duplicate();
+            base64Document.position(eol + 1);
+            base64Document.limit(end < 0 ? record.limit() : end);
+            return Base64.getDecoder().decode(base64Document);
+        }
+
+        int start = record.position();
+        int headerSize = getHeaderSize(version);
+        int flags = record.get(start + 5) & 0xff;
+        CompressionCodec codec = null;
+        if(VERSION_BINARY.equals(version) && flags != 0) {
+            throw new IOException("unknown record flags [" + flags + "]");
+        } else if(VERSION_COMPRESSED.equals(version) && CompressionCodecs.DEFLATE_DICTIONARY.equals(flags)) {
+            codec = dictionary == null ? null : dictionary.getCodec();
+            if(codec == null) {
+                throw new IOException("record compressed with a missing dictionary");
+            }
+        } else if(VERSION_COMPRESSED.equals(version) && flags != CompressionCodecs.NONE) {
+            codec = CompressionCodecs.get(flags);
+            if(codec == null) {
+                throw new IOException("unknown record compression [" + flags + "]");
+            }
+        }
+        int keyLength = record.getShort(start + 6) & 0xffff;
+        int dataLength = record.getInt(start + 8);
+        if(dataLength < 0 || (long) headerSize + keyLength + dataLength > record.remaining()) {
+            throw new IOException("truncated record");
+        }
+        Checksum checksum = CRC32C.create();
+        if(VERSION_COMPRESSED.equals(version)) {
+            CRC32C.update(checksum, slice(record, start + 4, 8));
+            CRC32C.update(checksum, slice(record, start + 16, 4));
+        }
+        CRC32C.update(checksum, slice(record, start + headerSize, keyLength + dataLength));
+        if((int) checksum.getValue() != record.getInt(start + 12)) {
+            throw new IOException("record checksum mismatch");
+        }
+        ByteBuffer data = slice(record, start + headerSize + keyLength, dataLength);
+        if(codec == null) {
+            if(VERSION_COMPRESSED.equals(version) && record.getInt(start + 16) != dataLength) {
+                throw new IOException("invalid record length");
+            }
+            return data;
+        }
+        int length = record.getInt(start + 16);
+        if(length < 0) {
+            throw new IOException("invalid record length");
+        }
+        byte[] uncompressed = new byte[length];
+        codec.decompress(data, uncompressed);
+        return ByteBuffer.wrap(uncompressed);
+    }
+
+    /**
+     * Returns the key (the document name) of the record starting at the position of the buffer.
+     *
+     * @param record
+     * @return
+     * @throws IOException
+     */
+    public static String getKey(ByteBuffer record) throws IOException {
+        int start = record.position();
+        Integer version = getVersion(record);
+        if(VERSION_BASE64.equals(version)) {
+            int end = start + BASE64_HEADER.length;
+            while(end < record.limit() && record.get(end) != '"') {
+                end++;
+            }
+            byte[] key = new byte[end - start - BASE64_HEADER.length];
+            slice(record, start + BASE64_HEADER.length, key.length).get(key);
+            return new String(key);
+        }
+        byte[] key = new byte[record.getShort(start + 6) & 0xffff];
+        if((long) getHeaderSize(version) + key.length > record.remaining()) {
+            throw new IOException("truncated record");
+        }
+        slice(record, start + getHeaderSize(version), key.length).get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the format version of the record starting at the position of the buffer.
+     *
+     * @param record
+     * @return
+     * @throws IOException
+     */
+    public static Integer getVersion(ByteBuffer record) throws IOException {
+        int start = record.position();
+        if(record.remaining() >= HEADER_SIZE && record.getInt(start) == MAGIC) {
+            Integer version = record.get(start + 4) & 0xff;
+            if(!VERSION_BINARY.equals(version) && !VERSION_COMPRESSED.equals(version)) {
+                throw new IOException("unknown record format version [" + version + "]");
             }
-            if (found)  {
-                return i;
+            return version;
+        }
+        if(record.remaining() >= BASE64_HEADER.length) {
+            for(int i = 0; i < BASE64_HEADER.length; i++) {
+                if(record.get(start + i) != BASE64_HEADER[i]) {
+                    throw new IOException("invalid record header");
+                }
             }
+            return VERSION_BASE64;
         }
-        return -1;
+        throw new IOException("invalid record header");
+    }
+
+    private static int getHeaderSize(Integer version) {
+        return VERSION_COMPRESSED.equals(version) ? COMPRESSED_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(position + length);
+        slice.position(position);
+        return slice.slice();
     }
 }
@@ -42,6 +42,7 @@ public class FileDataWriter {
     private static ExecutorService writeExecutor;
     private ReadWriteLock lock;
     private final File file;
+    private final String filename;
 
     static {
         /*
@@ -62,6 +63,7 @@ public class FileDataWriter {
         sb.append(File.separator);
         sb.append(filename);
         this.file = new File(sb.toString());
+        this.filename = filename;
 
         this.lock = Configuration.getFileDataBlockLock(filename);
         if(!this.file.exists()) {
@@ -96,7 +98,7 @@ public class FileDataWriter {
                     threadDataBlocks.add(dataBlocks.get(position));
                 }
             });
-            tasks.add(writeDataBlockTask(raf, this.lock, threadDataBlocks));
+            tasks.add(writeDataBlockTask(raf, this.lock, this.filename, threadDataBlocks));
         });
 
         final Boolean[] success = { true };
@@ -124,7 +126,7 @@ public class FileDataWriter {
     }
 
     private static Callable writeDataBlockTask(final RandomAccessFile raf, final ReadWriteLock lock,
-                                               final List<FileDataBlock> dataBlocks) {
+                                               final String filename, final List<FileDataBlock> dataBlocks) {
         Callable<Boolean> task = () -> {
             /**
              * Getting the write lock.
@@ -149,6 +151,10 @@ public class FileDataWriter {
                      */
                     raf.seek(position);
                     raf.write(dataBlock.getData());
+                    /*
+                     * Writing through the cached block, while holding the lock
+                     */
+                    BlockCache.getInstance().update(filename, dataBlock.getID(), dataBlock.getData());
                 } finally {
                     /*
                      * Releasing the write lock
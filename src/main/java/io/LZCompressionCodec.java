@@ -0,0 +1,220 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A fast compression codec of the LZ77 family, in the spirit of LZ4. The data is a list of sequences, each one a
+ * token byte, the literal bytes and a back reference to an earlier match:
+ *
+ * <pre>
+ *   token (literal length | match length - 4) | [length] | literals | offset (2, little endian) | [length]
+ * </pre>
+ *
+ * A length of 15 in the token continues in the following bytes, added up until one of them is not 255. The last
+ * sequence has only literals. Matches are found with a hash table of 4 byte sequences, trading some compression
+ * ratio for speed, and decoding is a loop of array copies.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class LZCompressionCodec implements CompressionCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 13;
+    private final ThreadLocal<int[]> hashTable = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    @Override
+    public Integer getId() {
+        return CompressionCodecs.LZ;
+    }
+
+    @Override
+    public Integer compress(byte[] data, int offset, int length, byte[] output, int outputOffset, int outputLength) {
+        int[] table = this.hashTable.get();
+        Arrays.fill(table, -1);
+        int end = offset + length, matchLimit = end - MIN_MATCH;
+        int outputEnd = outputOffset + outputLength, position = outputOffset;
+        int anchor = offset, i = offset;
+
+        while(i <= matchLimit) {
+            int sequence = readInt(data, i);
+            int hash = hash(sequence);
+            int candidate = table[hash];
+            table[hash] = i;
+            if(candidate < 0 || i - candidate > MAX_OFFSET || readInt(data, candidate) != sequence) {
+                /*
+                 * Skips faster over data which does not compress
+                 */
+                i += 1 + ((i - anchor) >>> 6);
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while(i + matchLength < end && data[candidate + matchLength] == data[i + matchLength]) {
+                matchLength++;
+            }
+            while(i > anchor && candidate > offset && data[i - 1] == data[candidate - 1]) {
+                i--;
+                candidate--;
+                matchLength++;
+            }
+            position = writeSequence(data, anchor, i - anchor, i - candidate, matchLength, output, position,
+                    outputEnd);
+            if(position < 0) {
+                return -1;
+            }
+            i += matchLength;
+            anchor = i;
+            if(i - 2 <= matchLimit) {
+                table[hash(readInt(data, i - 2))] = i - 2;
+            }
+        }
+        position = writeSequence(data, anchor, end - anchor, 0, 0, output, position, outputEnd);
+        return position < 0 ? -1 : position - outputOffset;
+    }
+
+    @Override
+    public void decompress(ByteBuffer data, byte[] output) throws IOException {
+        byte[] input;
+        int position, end;
+        if(data.hasArray()) {
+            input = data.array();
+            position = data.arrayOffset() + data.position();
+        } else {
+            input = new byte[data.remaining()];
+            data.duplicate().get(input);
+            position = 0;
+        }
+        end = position + data.remaining();
+
+        int length = 0;
+        while(true) {
+            if(position >= end) {
+                throw new IOException("corrupt compressed record");
+            }
+            int token = input[position++] & 0xff;
+            int literals = token >>> 4;
+            if(literals == 15) {
+                int b;
+                do {
+                    if(position >= end) {
+                        throw new IOException("corrupt compressed record");
+                    }
+                    b = input[position++] & 0xff;
+                    literals += b;
+                } while(b == 255);
+            }
+            if(literals > end - position || literals > output.length - length) {
+                throw new IOException("corrupt compressed record");
+            }
+            System.arraycopy(input, position, output, length, literals);
+            position += literals;
+            length += literals;
+            if(position == end) {
+                break;
+            }
+
+            if(end - position < 2) {
+                throw new IOException("corrupt compressed record");
+            }
+            int matchOffset = (input[position] & 0xff) | (input[position + 1] & 0xff) << 8;
+            position += 2;
+            int matchLength = token & 15;
+            if(matchLength == 15) {
+                int b;
+                do {
+                    if(position >= end) {
+                        throw new IOException("corrupt compressed record");
+                    }
+                    b = input[position++] & 0xff;
+                    matchLength += b;
+                } while(b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if(matchOffset == 0 || matchOffset > length || matchLength > output.length - length) {
+                throw new IOException("corrupt compressed record");
+            }
+            int from = length - matchOffset;
+            if(matchOffset >= matchLength) {
+                System.arraycopy(output, from, output, length, matchLength);
+            } else {
+                /*
+                 * The match overlaps the bytes it is copying, which repeats them
+                 */
+                for(int i = 0; i < matchLength; i++) {
+                    output[length + i] = output[from + i];
+                }
+            }
+            length += matchLength;
+        }
+        if(length != output.length) {
+            throw new IOException("corrupt compressed record");
+        }
+    }
+
+    /**
+     * Writes a sequence, a match length of 0 writes only the literals. Returns the new output position, or -1
+     * when the sequence does not fit.
+     */
+    private static int writeSequence(byte[] data, int literalOffset, int literals, int matchOffset,
+                                     int matchLength, byte[] output, int position, int outputEnd) {
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        if(position + 1 + literals + literals / 255 + 1 + 2 + matchCode / 255 + 1 > outputEnd) {
+            return -1;
+        }
+        int tokenPosition = position++;
+        int token;
+        if(literals >= 15) {
+            token = 15 << 4;
+            position = writeLength(literals - 15, output, position);
+        } else {
+            token = literals << 4;
+        }
+        System.arraycopy(data, literalOffset, output, position, literals);
+        position += literals;
+        if(matchLength > 0) {
+            output[position++] = (byte) matchOffset;
+            output[position++] = (byte) (matchOffset >>> 8);
+            if(matchCode >= 15) {
+                token |= 15;
+                position = writeLength(matchCode - 15, output, position);
+            } else {
+                token |= matchCode;
+            }
+        }
+        output[tokenPosition] = (byte) token;
+        return position;
+    }
+
+    private static int writeLength(int length, byte[] output, int position) {
+        for(; length >= 255; length -= 255) {
+            output[position++] = (byte) 255;
+        }
+        output[position++] = (byte) length;
+        return position;
+    }
+
+    private static int readInt(byte[] data, int i) {
+        return (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
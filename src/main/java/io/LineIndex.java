@@ -0,0 +1,350 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+import file.LineScanner;
+import file.SearchScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Index of the offsets where every line of a file starts, stored in a sidecar file next to the indexed one.
+ *
+ * The sidecar file is a plain array of longs, memory mapped when used, so any line can be located without
+ * scanning the file, and the line of any offset is found with a binary search. Lines are numbered from 1,
+ * like <code>grep -n</code> does.
+ *
+ * The index is built in parallel. The file is divided in chunks which first count their line starts. Once
+ * the position of every chunk within the array is known, the chunks write their offsets at the same time.
+ *
+ * The size and the modification time of the indexed file are stored in the sidecar file. An index whose file
+ * was modified is not valid anymore and it is built again.
+ *
+ * Sidecar file format:
+ *
+ * <pre>
+ * long magic, long version, long file size, long file modification time, long number of lines,
+ * long line offsets (number of lines)
+ * </pre>
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class LineIndex {
+    private static final Long MAGIC = 0x4c494e45494458L;
+    private static final Long VERSION = 1L;
+    private static final Integer HEADER_SIZE = 40;
+    private static final Integer WRITE_BUFFER_SIZE = 65536;
+    private final MemoryMappedFileRead index;
+    private final Long size;
+    private final Long lines;
+
+    private LineIndex(MemoryMappedFileRead index) throws IOException {
+        this.index = index;
+        if(index.getOffsetLimit() < HEADER_SIZE || index.getLong(0) != MAGIC || index.getLong(8) != VERSION) {
+            throw new IOException("invalid line index format");
+        }
+        this.size = index.getLong(16);
+        this.lines = index.getLong(32);
+        if(index.getOffsetLimit() != HEADER_SIZE + this.lines * 8) {
+            throw new IOException("invalid line index size");
+        }
+    }
+
+    /**
+     * Returns the sidecar file for the file.
+     *
+     * @param f
+     * @return
+     */
+    public static File indexFile(File f) {
+        return new File(f.getPath() + Configuration.FILENAME_LINE_INDEX_SUFFIX);
+    }
+
+    /**
+     * Returns the index of the file, building it if it doesn't exist or it is not valid anymore.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex getIndex(File f) throws IOException {
+        LineIndex index = open(f);
+        if(index == null) {
+            try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+                build(f, lease.getMemoryMappedFileRead());
+            }
+            index = open(f);
+        }
+        if(index == null) {
+            throw new IOException("cannot build the line index");
+        }
+        return index;
+    }
+
+    /**
+     * Opens the index of the file. It returns null if there is no index or the file changed since it was built.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex open(File f) throws IOException {
+        File indexFile = indexFile(f);
+        if(!indexFile.isFile()) {
+            return null;
+        }
+        MemoryMappedFileRead mMapRead = null;
+        try {
+            mMapRead = new MemoryMappedFileRead(indexFile);
+            LineIndex index = new LineIndex(mMapRead);
+            if(index.isValid(f)) {
+                mMapRead = null;
+                return index;
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if(mMapRead != null) {
+                mMapRead.unmap();
+            }
+        }
+    }
+
+    /**
+     * Builds the index of the file and writes it into the sidecar file.
+     *
+     * @param f
+     * @param mMapRead
+     * @throws IOException
+     */
+    public static void build(File f, MemoryMappedFileRead mMapRead) throws IOException {
+        Long size = mMapRead.getOffsetLimit();
+        Long modified = f.lastModified();
+        Long chunkSize = SearchScheduler.chunkSize(size, Configuration.SEARCH_THREADS);
+        Integer count = SearchScheduler.chunkCount(size, chunkSize);
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for(int n = 0; n < count; n++) {
+            starts[n] = n * chunkSize;
+            ends[n] = n == count - 1 ? size : Math.min(size, starts[n] + chunkSize);
+        }
+
+        /*
+         * First pass, counting the lines starting within every chunk
+         */
+        long[] chunkLines = new long[count];
+        SearchScheduler.invoke(starts, ends, (chunk, start, end) -> {
+            long[] lines = { 0L };
+            lineStarts(mMapRead, start, end, offset -> lines[0]++);
+            chunkLines[chunk] = lines[0];
+            return lines[0];
+        }, new AtomicBoolean(false));
+
+        long[] firstLine = new long[count];
+        Long lines = 0L;
+        for(int n = 0; n < count; n++) {
+            firstLine[n] = lines;
+            lines += chunkLines[n];
+        }
+
+        File indexFile = indexFile(f);
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+        try {
+            raf.setLength(HEADER_SIZE + lines * 8);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putLong(VERSION).putLong(size).putLong(modified).putLong(lines);
+            header.flip();
+            write(channel, header, 0L);
+
+            /*
+             * Second pass, every chunk writes its offsets at its own position of the array
+             */
+            SearchScheduler.invoke(starts, ends, (chunk, start, end) -> {
+                ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+                long[] position = { HEADER_SIZE + firstLine[chunk] * 8 };
+                try {
+                    lineStarts(mMapRead, start, end, offset -> {
+                        if(!buffer.hasRemaining()) {
+                            try {
+                                position[0] += flush(channel, buffer, position[0]);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        buffer.putLong(offset);
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                flush(channel, buffer, position[0]);
+                return chunkLines[chunk];
+            }, new AtomicBoolean(false));
+        } finally {
+            raf.close();
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Releases the mapping of the sidecar file. The index cannot be used after this call.
+     */
+    public void unmap() {
+        this.index.unmap();
+    }
+
+    /**
+     * Returns true if the index was built for the current content of the file.
+     *
+     * @param f
+     * @return
+     */
+    public Boolean isValid(File f) {
+        return this.index.getLong(16) == f.length() && this.index.getLong(24) == f.lastModified();
+    }
+
+    public Long getLineCount() {
+        return this.lines;
+    }
+
+    /**
+     * Returns the file offset where the line starts.
+     *
+     * @param line
+     * @return
+     */
+    public Long getLineStart(Long line) {
+        if(line < 1 || line > this.lines) {
+            throw new IndexOutOfBoundsException("line " + line + " of " + this.lines);
+        }
+        return this.index.getLong(HEADER_SIZE + (line - 1) * 8);
+    }
+
+    /**
+     * Returns the file offset where the next line starts, which is the end of the file for the last line.
+     *
+     * @param line
+     * @return
+     */
+    public Long getLineEnd(Long line) {
+        return line.equals(this.lines) ? this.size : getLineStart(line + 1);
+    }
+
+    /**
+     * Returns the line containing the file offset.
+     *
+     * @param offset
+     * @return
+     */
+    public Long getLineNumber(Long offset) {
+        long low = 1, high = this.lines;
+        while(low < high) {
+            long middle = (low + high + 1) >>> 1;
+            if(getLineStart(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reads the lines from first to last (both inclusive) of the indexed file, without the EOL.
+     *
+     * @param source
+     * @param first
+     * @param last
+     * @return
+     * @throws IOException
+     */
+    public List<String> getLines(MemoryMappedFileRead source, Long first, Long last) throws IOException {
+        List<String> result = new ArrayList<>();
+        for(Long line = first; line <= last; line++) {
+            Long start = getLineStart(line);
+            Long end = getLineEnd(line);
+            if(end > start && source.get(end - 1) == LineScanner.EOL) {
+                end--;
+            }
+            result.add(source.readString(start, end));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the lines starting within [start, end).
+     *
+     * @param mMapRead
+     * @param start
+     * @param end
+     * @param consumer
+     */
+    private static void lineStarts(MemoryMappedFileRead mMapRead, long start, long end, LongConsumer consumer) {
+        long size = mMapRead.getOffsetLimit();
+        if(start == 0 && end > 0) {
+            consumer.accept(0L);
+        }
+        /*
+         * Every EOL within [start - 1, end - 1) is followed by a line starting within the chunk, unless it is the
+         * last byte of the file
+         */
+        long p = Math.max(0L, start - 1);
+        long limit = Math.min(end - 1, size - 1);
+        while(p < limit) {
+            Integer segment = mMapRead.getSegmentIndex(p);
+            long segmentOffset = mMapRead.getSegmentOffset(segment);
+            ByteBuffer buffer = mMapRead.getSegment(segment);
+            int to = (int) (Math.min(limit, mMapRead.getSegmentEnd(segment)) - segmentOffset);
+            int i = (int) (p - segmentOffset);
+            while((i = ByteScanner.indexOf(buffer, LineScanner.EOL, i, to)) >= 0) {
+                consumer.accept(segmentOffset + i + 1);
+                i++;
+            }
+            p = segmentOffset + to;
+        }
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        long written = write(channel, buffer, position);
+        buffer.clear();
+        return written;
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while(buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the mappings of the most recently searched files, so repeated searches over the same files do not map
+ * them again.
+ *
+ * A mapping is identified by the file path, its size and its modification time, so a modified file is mapped
+ * again. Every user gets a {@link Lease} which must be closed when the search is done. The cache is bounded by
+ * the number of files and the mapped bytes, and the least recently used mappings are evicted first.
+ *
+ * Evicted mappings are unmapped as soon as their last lease is closed, instead of waiting for the garbage
+ * collector to release the address space.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class MappingCache {
+    private static final MappingCache instance = new MappingCache(Configuration.MAPPING_CACHE_ENTRIES,
+            Configuration.MAPPING_CACHE_BYTES);
+    private final Integer maxEntries;
+    private final Long maxBytes;
+    private final LinkedHashMap<String, Entry> entries;
+    private Long bytes;
+    private Long hits;
+    private Long misses;
+
+    /**
+     * A mapping in use. Closing it releases the mapping.
+     */
+    public static class Lease implements Closeable {
+        private final MappingCache cache;
+        private final Entry entry;
+        private Boolean closed;
+
+        Lease(MappingCache cache, Entry entry) {
+            this.cache = cache;
+            this.entry = entry;
+            this.closed = false;
+        }
+
+        public MemoryMappedFileRead getMemoryMappedFileRead() {
+            return this.entry.mMapRead;
+        }
+
+        @Override
+        public void close() {
+            synchronized(this.cache) {
+                if(!this.closed) {
+                    this.closed = true;
+                    this.cache.release(this.entry);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final MemoryMappedFileRead mMapRead;
+        private Integer references;
+        private Boolean evicted;
+
+        Entry(String key, MemoryMappedFileRead mMapRead) {
+            this.key = key;
+            this.mMapRead = mMapRead;
+            this.references = 0;
+            this.evicted = false;
+        }
+    }
+
+    /**
+     * MappingCache constructor.
+     *
+     * @param maxEntries
+     * @param maxBytes
+     */
+    public MappingCache(Integer maxEntries, Long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.bytes = 0L;
+        this.hits = 0L;
+        this.misses = 0L;
+    }
+
+    public static MappingCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the mapping of the file, mapping it only if it is not cached or the file changed.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public Lease acquire(File f) throws IOException {
+        String path = f.getCanonicalPath();
+        String key = path + ":" + f.length() + ":" + f.lastModified();
+        synchronized(this) {
+            Entry entry = this.entries.get(path);
+            if(entry != null && entry.key.equals(key)) {
+                this.hits++;
+                entry.references++;
+                return new Lease(this, entry);
+            }
+            if(entry != null) {
+                /*
+                 * The file changed
+                 */
+                remove(path, entry);
+            }
+        }
+
+        /*
+         * Mapping outside the lock. If another thread maps the same file meanwhile, the last one is cached.
+         */
+        Entry entry = new Entry(key, new MemoryMappedFileRead(f));
+        synchronized(this) {
+            this.misses++;
+            Entry previous = this.entries.put(path, entry);
+            if(previous != null) {
+                this.bytes -= previous.mMapRead.getMappedBytes();
+                evict(previous);
+            }
+            this.bytes += entry.mMapRead.getMappedBytes();
+            entry.references++;
+            Lease lease = new Lease(this, entry);
+            trim();
+            return lease;
+        }
+    }
+
+    /**
+     * Evicts every mapping. The mappings in use are unmapped when they are released.
+     */
+    public synchronized void clear() {
+        List<String> paths = new ArrayList<>(this.entries.keySet());
+        for(String path : paths) {
+            remove(path, this.entries.get(path));
+        }
+    }
+
+    public synchronized Integer size() {
+        return this.entries.size();
+    }
+
+    public synchronized Long getMappedBytes() {
+        return this.bytes;
+    }
+
+    public synchronized Long getHits() {
+        return this.hits;
+    }
+
+    public synchronized Long getMisses() {
+        return this.misses;
+    }
+
+    private void release(Entry entry) {
+        entry.references--;
+        if(entry.evicted && entry.references == 0) {
+            entry.mMapRead.unmap();
+        }
+    }
+
+    private void remove(String path, Entry entry) {
+        this.entries.remove(path);
+        this.bytes -= entry.mMapRead.getMappedBytes();
+        evict(entry);
+    }
+
+    private void evict(Entry entry) {
+        entry.evicted = true;
+        if(entry.references == 0) {
+            entry.mMapRead.unmap();
+        }
+    }
+
+    /**
+     * Evicts the least recently used mappings until the cache is within its bounds.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while((this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            this.bytes -= entry.mMapRead.getMappedBytes();
+            evict(entry);
+        }
+    }
+}
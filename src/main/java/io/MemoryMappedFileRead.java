@@ -16,9 +16,15 @@
  */
 package io;
 
+import conf.Configuration;
+
 import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
 import java.util.Map;
 
@@ -31,16 +37,85 @@ import java.util.Map;
  * When no resident memory is available or the OS require to free some memory, pages can be evicted
  * by selecting them using the LRU (last recent use) mechanism.
  *
+ * A single mapping is limited to 2G, so the file is mapped as a sequence of segments. Every segment
+ * maps its own range of the file plus an overlap with the next segment, which means a line starting
+ * within a segment can be read from it as long as the line is shorter than the overlap. All the
+ * offsets are file offsets.
+ *
+ * A window of the file can be mapped instead of the whole file, for instance the data appended since the
+ * last read. The offsets are still file offsets, and the window start must be a line start.
+ *
  * You can verify the resident memory size within the /proc/[pid]/smaps file.
  *
  * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
  */
 public class MemoryMappedFileRead {
-    private MappedByteBuffer buffer;
+    private final File file;
+    private final MappedByteBuffer[] segments;
+    private final Long segmentSize;
+    private final Long start;
+    private final Long size;
+    private Long position;
+    private volatile Boolean mapped;
 
     public MemoryMappedFileRead(File f) throws IOException {
-        FileChannel channel = new RandomAccessFile(f, "r").getChannel();
-        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this(f, Configuration.MMAP_SEGMENT_SIZE, Configuration.MMAP_SEGMENT_OVERLAP);
+    }
+
+    /**
+     * MemoryMappedFileRead constructor.
+     *
+     * @param f
+     * @param segmentSize
+     * @param segmentOverlap
+     * @throws IOException
+     */
+    public MemoryMappedFileRead(File f, Long segmentSize, Integer segmentOverlap) throws IOException {
+        this(f, 0L, null, segmentSize, segmentOverlap);
+    }
+
+    /**
+     * Maps the [start, end) window of the file. A null end maps up to the current end of the file.
+     *
+     * @param f
+     * @param start
+     * @param end
+     * @param segmentSize
+     * @param segmentOverlap
+     * @throws IOException
+     */
+    public MemoryMappedFileRead(File f, Long start, Long end, Long segmentSize, Integer segmentOverlap)
+            throws IOException {
+        if(segmentSize <= 0 || segmentOverlap < 0 || segmentSize + segmentOverlap > Integer.MAX_VALUE) {
+            throw new IOException("invalid segment size [" + segmentSize + "+" + segmentOverlap + "]");
+        }
+        this.file = f;
+        this.mapped = true;
+        this.segmentSize = segmentSize;
+        this.start = start;
+        this.position = start;
+
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.size = end == null ? channel.size() : Math.min(end, channel.size());
+            if(start < 0 || start > this.size) {
+                throw new IOException("invalid window [" + start + "-" + this.size + "]");
+            }
+
+            Long count = (this.size - start + segmentSize - 1) / segmentSize;
+            this.segments = new MappedByteBuffer[Math.max(1, count.intValue())];
+            for(Integer n = 0; n < this.segments.length; n++) {
+                Long offset = start + n * segmentSize;
+                Long length = Math.min(this.size - offset, segmentSize + segmentOverlap);
+                this.segments[n] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(0L, length));
+            }
+        } finally {
+            /*
+             * The mappings remain valid once the channel is closed
+             */
+            raf.close();
+        }
     }
 
     /**
@@ -50,9 +125,14 @@ public class MemoryMappedFileRead {
      * @return
      * @throws IOException
      */
-    public Integer read(byte[] buffer) throws IOException {
-        this.buffer.get(buffer);
-        return this.buffer.remaining();
+    public Long read(byte[] buffer) throws IOException {
+        if(buffer.length > this.size - this.position) {
+            throw new IOException("buffer exceeds the remaining data");
+        }
+        for(Integer i = 0; i < buffer.length; i++) {
+            buffer[i] = get(this.position++);
+        }
+        return this.size - this.position;
     }
 
     /**
@@ -60,29 +140,44 @@ public class MemoryMappedFileRead {
      * position and the line.
      *
      * @param offset
-     * @return Map.Entry<Integer, String>
+     * @return Map.Entry<Long, String>
      * @throws IOException
      */
-    public Map.Entry<Integer, String> readLine(Integer offset) throws IOException {
-        StringBuilder _sb = new StringBuilder();
-        if(offset != 0) {
+    public Map.Entry<Long, String> readLine(Long offset) throws IOException {
+        if(!offset.equals(this.start)) {
             /**
              * Seek for the start of the next line
              */
             offset = seekEOL(offset);
         }
-        for(;offset < buffer.limit() - 1; offset++) {
-            Byte b = buffer.get(offset);
-            /**
-             * At the line break, increment the offset
-             * and return the line
-             */
-            if(b.intValue() == 10) {
-                return new AbstractMap.SimpleEntry<Integer, String>(offset, _sb.toString());
-            }
-            _sb.append((char) b.byteValue());
+        if(offset >= this.size) {
+            return new AbstractMap.SimpleEntry<Long, String>(offset, null);
         }
-        return new AbstractMap.SimpleEntry<Integer, String>(offset, _sb.length() == 0 ? null : _sb.toString());
+        Long eol = seekEOL(offset);
+        /**
+         * The line ends before the line break, if there is any
+         */
+        Long end = eol > offset && get(eol - 1) == 10 ? eol - 1 : eol;
+        return new AbstractMap.SimpleEntry<Long, String>(end, readString(offset, end));
+    }
+
+    /**
+     * Reads the [start, end) range of the file as an UTF-8 string.
+     *
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    public String readString(Long start, Long end) throws IOException {
+        if(end - start > Integer.MAX_VALUE) {
+            throw new IOException("range too big [" + start + "-" + end + "]");
+        }
+        byte[] data = new byte[Long.valueOf(end - start).intValue()];
+        for(Integer i = 0; i < data.length; i++) {
+            data[i] = get(start + i);
+        }
+        return new String(data, StandardCharsets.UTF_8);
     }
 
     /**
@@ -91,21 +186,212 @@ public class MemoryMappedFileRead {
      * @param p
      * @return
      */
-    public Integer seekEOL(Integer p) {
-        for(;p < buffer.limit() - 1; p++) {
-            Byte b = buffer.get(p);
-            /**
-             * At the line break, increment the offset
-             */
-            if(b.intValue() == 10) {
-                p++;
-                return p;
+    public Long seekEOL(Long p) {
+        while(p < this.size) {
+            Integer segment = getSegmentIndex(p);
+            ByteBuffer buffer = this.segments[segment];
+            Long offset = getSegmentOffset(segment);
+            int eol = ByteScanner.indexOf(buffer, (byte) 10, Long.valueOf(p - offset).intValue(), buffer.limit());
+            if(eol >= 0) {
+                /**
+                 * At the line break, increment the offset
+                 */
+                return offset + eol + 1;
+            }
+            p = offset + buffer.limit();
+        }
+        return this.size;
+    }
+
+    /**
+     * It seeks the previous EOL and returns the position of the line start containing p - 1, which is the start
+     * of the previous line when p is a line start.
+     *
+     * @param p
+     * @return
+     */
+    public Long seekBOL(Long p) {
+        /*
+         * The byte at p - 1 is left out only in the first segment, the earlier segments are searched up to their end
+         */
+        Long end = p - 1;
+        while(end > this.start) {
+            Integer segment = getSegmentIndex(end - 1);
+            Long offset = getSegmentOffset(segment);
+            int eol = ByteScanner.lastIndexOf(this.segments[segment], (byte) 10, 0,
+                    Long.valueOf(end - offset).intValue());
+            if(eol >= 0) {
+                return offset + eol + 1;
+            }
+            end = offset;
+        }
+        return this.start;
+    }
+
+    /**
+     * Returns the byte at the file offset.
+     *
+     * @param offset
+     * @return
+     */
+    public byte get(long offset) {
+        int segment = (int) Math.min((offset - this.start) / this.segmentSize, this.segments.length - 1);
+        return this.segments[segment].get((int) (offset - this.start - segment * this.segmentSize));
+    }
+
+    /**
+     * Returns the big endian long at the file offset.
+     *
+     * @param offset
+     * @return
+     */
+    public long getLong(long offset) {
+        int segment = getSegmentIndex(offset);
+        int position = (int) (offset - getSegmentOffset(segment));
+        if(position + 8 <= this.segments[segment].limit()) {
+            return this.segments[segment].getLong(position);
+        }
+        /*
+         * The long crosses the end of the segment
+         */
+        long value = 0;
+        for(int i = 0; i < 8; i++) {
+            value = (value << 8) | (get(offset + i) & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Releases the mappings now instead of waiting for the garbage collector. Any read after this call, from
+     * this object or from the segment views, crashes the process, so it can only be called once nobody uses
+     * the mapping anymore (see {@link MappingCache}).
+     */
+    public void unmap() {
+        synchronized(this.segments) {
+            if(!this.mapped) {
+                return;
+            }
+            this.mapped = false;
+            for(MappedByteBuffer segment : this.segments) {
+                unmap(segment);
+            }
+        }
+    }
+
+    public Boolean isMapped() {
+        return this.mapped;
+    }
+
+    /**
+     * Runs the cleaner of the buffer. Java 9 and later expose it through Unsafe.invokeCleaner, Java 8 through
+     * the cleaner of the direct buffer. If neither is available the mapping is left to the garbage collector.
+     *
+     * @param buffer
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            try {
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
             }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            /*
+             * Released by the garbage collector
+             */
+        }
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the number of bytes mapped by all the segments, overlaps included.
+     *
+     * @return
+     */
+    public Long getMappedBytes() {
+        Long bytes = 0L;
+        for(MappedByteBuffer segment : this.segments) {
+            bytes += segment.capacity();
         }
-        return p;
+        return bytes;
     }
 
-    public Integer getOffsetLimit() {
-        return this.buffer.limit();
+    /**
+     * Returns how much of the mapped file is resident in memory (from /proc/self/smaps) and the page faults of
+     * the process.
+     *
+     * @return
+     */
+    public PageStatistics getPageStatistics() {
+        return PageStatistics.of(this.file);
+    }
+
+    public Long getOffsetStart() {
+        return this.start;
+    }
+
+    public Long getOffsetLimit() {
+        return this.size;
+    }
+
+    public Integer getSegmentCount() {
+        return this.segments.length;
+    }
+
+    /**
+     * Returns the segment which owns the file offset.
+     *
+     * @param offset
+     * @return
+     */
+    public Integer getSegmentIndex(Long offset) {
+        Long segment = Math.min((offset - this.start) / this.segmentSize, this.segments.length - 1);
+        return segment.intValue();
+    }
+
+    /**
+     * Returns the file offset where the segment begins.
+     *
+     * @param segment
+     * @return
+     */
+    public Long getSegmentOffset(Integer segment) {
+        return this.start + segment * this.segmentSize;
+    }
+
+    /**
+     * Returns the file offset where the data owned by the segment ends. The segment data beyond this
+     * offset is the overlap with the next segment.
+     *
+     * @param segment
+     * @return
+     */
+    public Long getSegmentEnd(Integer segment) {
+        if(segment == this.segments.length - 1) {
+            return this.size;
+        }
+        return Math.min(this.size, this.start + (segment + 1) * this.segmentSize);
+    }
+
+    /**
+     * Returns a view of the mapped segment. The view shares the mapped memory but has its own position, so
+     * it can be used by different threads for absolute reads.
+     *
+     * @param segment
+     * @return
+     */
+    public ByteBuffer getSegment(Integer segment) {
+        return this.segments[segment].duplicate();
     }
-}
\ No newline at end of file
+}
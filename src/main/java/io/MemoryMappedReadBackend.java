@@ -0,0 +1,74 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import file.LineScanner;
+import file.TextMatcher;
+
+/**
+ * Reads the file through its memory mapping (see {@link MemoryMappedFileRead}).
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class MemoryMappedReadBackend implements ReadBackend {
+    private final MemoryMappedFileRead mMapRead;
+    private final MappingCache.Lease lease;
+
+    /**
+     * MemoryMappedReadBackend constructor.
+     *
+     * @param mMapRead
+     */
+    public MemoryMappedReadBackend(MemoryMappedFileRead mMapRead) {
+        this.mMapRead = mMapRead;
+        this.lease = null;
+    }
+
+    /**
+     * MemoryMappedReadBackend constructor for a mapping of the mapping cache, which is released on close.
+     *
+     * @param lease
+     */
+    public MemoryMappedReadBackend(MappingCache.Lease lease) {
+        this.mMapRead = lease.getMemoryMappedFileRead();
+        this.lease = lease;
+    }
+
+    public MemoryMappedFileRead getMemoryMappedFileRead() {
+        return this.mMapRead;
+    }
+
+    @Override
+    public Long getOffsetLimit() {
+        return this.mMapRead.getOffsetLimit();
+    }
+
+    @Override
+    public boolean scan(long start, long end, TextMatcher matcher, LineScanner.LineHandler handler) {
+        return LineScanner.scan(this.mMapRead, start, end, matcher, handler);
+    }
+
+    @Override
+    public void close() {
+        /*
+         * A mapping created by the caller is released by the garbage collector
+         */
+        if(this.lease != null) {
+            this.lease.close();
+        }
+    }
+}
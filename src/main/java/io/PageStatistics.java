@@ -0,0 +1,174 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * Page cache residency of the mappings of a file and page faults of the process, read from the Linux proc
+ * filesystem.
+ *
+ * <ul>
+ * <li>The mapped and resident bytes come from the entries of the file in /proc/self/smaps (Size and Rss). They
+ * add up every mapping of the file within the process.</li>
+ * <li>The minor and major page faults come from /proc/self/stat. They are counted for the whole process, so
+ * they include the faults of anything else running at the same time.</li>
+ * </ul>
+ *
+ * On systems without the proc filesystem every value is 0.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class PageStatistics {
+    private static final String SMAPS = "/proc/self/smaps";
+    private static final String STAT = "/proc/self/stat";
+    private static final Pattern MAPPING_HEADER = Pattern.compile("[0-9a-f]+-[0-9a-f]+ ");
+    private final Long mappedBytes;
+    private final Long residentBytes;
+    private final Long minorFaults;
+    private final Long majorFaults;
+
+    /**
+     * PageStatistics constructor.
+     *
+     * @param mappedBytes
+     * @param residentBytes
+     * @param minorFaults
+     * @param majorFaults
+     */
+    public PageStatistics(final Long mappedBytes, final Long residentBytes, final Long minorFaults,
+                          final Long majorFaults) {
+        this.mappedBytes = mappedBytes;
+        this.residentBytes = residentBytes;
+        this.minorFaults = minorFaults;
+        this.majorFaults = majorFaults;
+    }
+
+    /**
+     * Returns the current page faults of the process, with no mapping data.
+     *
+     * @return
+     */
+    public static PageStatistics faults() {
+        long[] faults = readFaults();
+        return new PageStatistics(0L, 0L, faults[0], faults[1]);
+    }
+
+    /**
+     * Returns the current residency of the file mappings and the page faults of the process.
+     *
+     * @param f
+     * @return
+     */
+    public static PageStatistics of(File f) {
+        long[] faults = readFaults();
+        long[] residency = readResidency(f);
+        return new PageStatistics(residency[0], residency[1], faults[0], faults[1]);
+    }
+
+    /**
+     * Returns the faults happened since the start statistics, with the mapping data of these ones.
+     *
+     * @param start
+     * @return
+     */
+    public PageStatistics since(PageStatistics start) {
+        return new PageStatistics(this.mappedBytes, this.residentBytes, this.minorFaults - start.minorFaults,
+                this.majorFaults - start.majorFaults);
+    }
+
+    public Long getMappedBytes() {
+        return this.mappedBytes;
+    }
+
+    public Long getResidentBytes() {
+        return this.residentBytes;
+    }
+
+    public Long getMinorFaults() {
+        return this.minorFaults;
+    }
+
+    public Long getMajorFaults() {
+        return this.majorFaults;
+    }
+
+    public String toString() {
+        return "mapped=" + this.mappedBytes + " resident=" + this.residentBytes + " minflt=" + this.minorFaults +
+                " majflt=" + this.majorFaults;
+    }
+
+    /**
+     * Reads the minor and major faults of the process.
+     *
+     * @return
+     */
+    private static long[] readFaults() {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get(STAT)));
+            /*
+             * The command name can contain spaces, the fields are counted after it. minflt and majflt are the
+             * fields 10 and 12.
+             */
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return new long[] { Long.parseLong(fields[7]), Long.parseLong(fields[9]) };
+        } catch (IOException | RuntimeException e) {
+            return new long[] { 0L, 0L };
+        }
+    }
+
+    /**
+     * Adds the size and the resident size of every mapping of the file.
+     *
+     * @param f
+     * @return
+     */
+    private static long[] readResidency(File f) {
+        long[] residency = { 0L, 0L };
+        try(BufferedReader reader = new BufferedReader(new FileReader(SMAPS))) {
+            String path = f.getCanonicalPath();
+            boolean inFile = false;
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(MAPPING_HEADER.matcher(line).lookingAt()) {
+                    /*
+                     * Mapping header: address perms offset dev inode path
+                     */
+                    inFile = line.endsWith(" " + path);
+                } else if(inFile && line.startsWith("Size:")) {
+                    residency[0] += kiloBytes(line);
+                } else if(inFile && line.startsWith("Rss:")) {
+                    residency[1] += kiloBytes(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return new long[] { 0L, 0L };
+        }
+        return residency;
+    }
+
+    private static long kiloBytes(String line) {
+        String[] fields = line.trim().split("\\s+");
+        return Long.parseLong(fields[1]) * 1024;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import file.LineScanner;
+import file.TextMatcher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The way a search reads the data of a file.
+ *
+ * All the backends follow the same line ownership rule, a region owns the lines whose first byte lies within
+ * [start, end), and report the matching lines with their file offset. They only differ in how the bytes get
+ * from the file into memory:
+ *
+ * <ul>
+ * <li>{@link #MMAP} maps the file, the pages are loaded by page faults. The mapping is kept by the
+ * {@link MappingCache} for the next searches.</li>
+ * <li>{@link #FILE_CHANNEL} reads large blocks with positional reads (pread) into pooled direct buffers.</li>
+ * <li>{@link #STREAM} reads every region sequentially through a stream, so the kernel read-ahead applies.</li>
+ * </ul>
+ *
+ * A backend is shared by all the threads of a search, so the scan must be thread safe.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public interface ReadBackend extends Closeable {
+    Integer MMAP = 1;
+    Integer FILE_CHANNEL = 2;
+    Integer STREAM = 3;
+
+    /**
+     * Opens the file with the backend type.
+     *
+     * @param type
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    static ReadBackend open(Integer type, File f) throws IOException {
+        if(MMAP.equals(type)) {
+            return new MemoryMappedReadBackend(MappingCache.getInstance().acquire(f));
+        } else if(FILE_CHANNEL.equals(type)) {
+            return new FileChannelReadBackend(f);
+        } else if(STREAM.equals(type)) {
+            return new StreamReadBackend(f);
+        }
+        throw new IOException("invalid read backend [" + type + "]");
+    }
+
+    /**
+     * Returns the name of the backend type.
+     *
+     * @param type
+     * @return
+     */
+    static String name(Integer type) {
+        return MMAP.equals(type) ? "mmap" : FILE_CHANNEL.equals(type) ? "pread" : STREAM.equals(type) ?
+                "stream" : "unknown";
+    }
+
+    Long getOffsetLimit();
+
+    /**
+     * Scans the lines owned by the [start, end) region of the file.
+     *
+     * @param start
+     * @param end
+     * @param matcher
+     * @param handler
+     * @return false if the handler stopped the scan
+     * @throws IOException
+     */
+    boolean scan(long start, long end, TextMatcher matcher, LineScanner.LineHandler handler) throws IOException;
+}
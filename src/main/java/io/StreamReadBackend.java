@@ -0,0 +1,73 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads every region sequentially through its own stream, from the region start to its end. Sequential reads
+ * trigger the kernel read-ahead, so the next blocks are usually loaded by the time they are read.
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class StreamReadBackend extends BufferedReadBackend {
+
+    /**
+     * StreamReadBackend constructor.
+     *
+     * @param f
+     */
+    public StreamReadBackend(File f) {
+        super(f);
+    }
+
+    @Override
+    protected RegionReader openRegion(long position) throws IOException {
+        FileInputStream in = new FileInputStream(this.file);
+        in.getChannel().position(position);
+        return new RegionReader() {
+            @Override
+            public int read(ByteBuffer buffer, long position) throws IOException {
+                /*
+                 * The stream is always at the requested position, as the blocks are read in order
+                 */
+                int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if(read > 0) {
+                    buffer.position(buffer.position() + read);
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    protected ByteBuffer allocate(Integer capacity) {
+        return ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    public void close() {
+    }
+}
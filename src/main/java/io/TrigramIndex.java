@@ -0,0 +1,433 @@
+/*
+ * DirectoryAuthenticator class
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Author: Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+package io;
+
+import conf.Configuration;
+import file.LineScanner;
+import file.SearchScheduler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent trigram index for files which do not change, stored in a sidecar file next to the indexed one.
+ *
+ * The indexed file is divided in blocks of whole lines. For every trigram (three consecutive bytes within a
+ * line) the index keeps the list of blocks containing it. A text can only be found in the blocks containing
+ * all its trigrams, so a search only needs to scan those blocks. As a match never crosses a line, it never
+ * crosses a block either.
+ *
+ * The block lists are stored sorted, as the difference with the previous block encoded as a
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding#varints">varint</a>, so most of the
+ * entries take a single byte. The sidecar file is memory mapped when used.
+ *
+ * The size and the modification time of the indexed file are stored in the sidecar file. An index whose file
+ * was modified is not valid anymore and it is built again.
+ *
+ * Sidecar file format:
+ *
+ * <pre>
+ * int magic, int version, long file size, long file modification time, long block size,
+ * int number of blocks, int number of trigrams,
+ * long block offsets (number of blocks + 1),
+ * trigram entries (int trigram, int number of blocks, long postings offset, int postings length),
+ * postings
+ * </pre>
+ *
+ * @author Ricardo Lorenzo <unshakablespirit@gmail.com>
+ */
+public class TrigramIndex {
+    private static final Integer MAGIC = 0x54524947;
+    private static final Integer VERSION = 1;
+    private static final Integer HEADER_SIZE = 40;
+    private static final Integer ENTRY_SIZE = 20;
+    private final MappedByteBuffer buffer;
+    private final Integer blocks;
+    private final Integer trigrams;
+    private final Integer entriesOffset;
+    private final Integer postingsOffset;
+
+    private TrigramIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("invalid trigram index format");
+        }
+        this.blocks = buffer.getInt(32);
+        this.trigrams = buffer.getInt(36);
+        this.entriesOffset = HEADER_SIZE + (this.blocks + 1) * 8;
+        this.postingsOffset = this.entriesOffset + this.trigrams * ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the sidecar file for the file.
+     *
+     * @param f
+     * @return
+     */
+    public static File indexFile(File f) {
+        return new File(f.getPath() + Configuration.FILENAME_TRIGRAM_INDEX_SUFFIX);
+    }
+
+    /**
+     * Returns the index of the file, building it if it doesn't exist or it is not valid anymore.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static TrigramIndex getIndex(File f) throws IOException {
+        TrigramIndex index = open(f);
+        if(index == null) {
+            try(MappingCache.Lease lease = MappingCache.getInstance().acquire(f)) {
+                build(f, lease.getMemoryMappedFileRead(), Configuration.TRIGRAM_INDEX_BLOCK_SIZE);
+            }
+            index = open(f);
+        }
+        if(index == null) {
+            throw new IOException("cannot build the trigram index");
+        }
+        return index;
+    }
+
+    /**
+     * Opens the index of the file. It returns null if there is no index or the file changed since it was built.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static TrigramIndex open(File f) throws IOException {
+        File indexFile = indexFile(f);
+        if(!indexFile.isFile() || indexFile.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        MappedByteBuffer buffer = null;
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            TrigramIndex index = new TrigramIndex(buffer);
+            if(index.isValid(f)) {
+                buffer = null;
+                return index;
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if(buffer != null) {
+                MemoryMappedFileRead.unmap(buffer);
+            }
+            raf.close();
+        }
+    }
+
+    /**
+     * Builds the index of the file and writes it into the sidecar file. The trigrams of the blocks are
+     * extracted in parallel by the search threads.
+     *
+     * @param f
+     * @param mMapRead
+     * @param blockSize
+     * @throws IOException
+     */
+    public static void build(File f, MemoryMappedFileRead mMapRead, Long blockSize) throws IOException {
+        Long size = mMapRead.getOffsetLimit();
+        Long modified = f.lastModified();
+
+        /*
+         * Blocks start at the first line starting after every multiple of the block size
+         */
+        Integer count = SearchScheduler.chunkCount(size, blockSize);
+        long[] blockOffsets = new long[count + 1];
+        for(Integer n = 1; n < count; n++) {
+            blockOffsets[n] = Math.max(blockOffsets[n - 1], mMapRead.seekEOL(n * blockSize - 1));
+        }
+        blockOffsets[count] = size;
+
+        /*
+         * The trigrams are extracted in batches of blocks, so the postings can be appended in the block order
+         * without keeping the trigrams of every block in memory.
+         */
+        Map<Integer, Postings> postings = new HashMap<>();
+        Integer batchSize = Configuration.SEARCH_THREADS * 4;
+        for(Integer first = 0; first < count; first += batchSize) {
+            Integer batch = Math.min(batchSize, count - first);
+            long[] starts = Arrays.copyOfRange(blockOffsets, first, first + batch);
+            long[] ends = Arrays.copyOfRange(blockOffsets, first + 1, first + batch + 1);
+            int[][] blockTrigrams = new int[batch][];
+            Integer firstBlock = first;
+            SearchScheduler.invoke(starts, ends, (chunk, start, end) -> {
+                blockTrigrams[chunk] = trigrams(mMapRead, start, end);
+                return Long.valueOf(blockTrigrams[chunk].length);
+            }, new AtomicBoolean(false));
+
+            for(Integer n = 0; n < batch; n++) {
+                for(int trigram : blockTrigrams[n]) {
+                    postings.computeIfAbsent(trigram, t -> new Postings()).add(firstBlock + n);
+                }
+            }
+        }
+
+        File indexFile = indexFile(f);
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        Integer[] sortedTrigrams = postings.keySet().toArray(new Integer[0]);
+        Arrays.sort(sortedTrigrams);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(blockSize);
+            out.writeInt(count);
+            out.writeInt(sortedTrigrams.length);
+            for(long blockOffset : blockOffsets) {
+                out.writeLong(blockOffset);
+            }
+            Long postingsOffset = 0L;
+            for(Integer trigram : sortedTrigrams) {
+                Postings p = postings.get(trigram);
+                out.writeInt(trigram);
+                out.writeInt(p.count);
+                out.writeLong(postingsOffset);
+                out.writeInt(p.length);
+                postingsOffset += p.length;
+            }
+            for(Integer trigram : sortedTrigrams) {
+                Postings p = postings.get(trigram);
+                out.write(p.data, 0, p.length);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Releases the mapping of the sidecar file. The index cannot be used after this call.
+     */
+    public void unmap() {
+        MemoryMappedFileRead.unmap(this.buffer);
+    }
+
+    /**
+     * Returns true if the index was built for the current content of the file.
+     *
+     * @param f
+     * @return
+     */
+    public Boolean isValid(File f) {
+        return this.buffer.getLong(8) == f.length() && this.buffer.getLong(16) == f.lastModified();
+    }
+
+    public Integer getBlockCount() {
+        return this.blocks;
+    }
+
+    public Long getBlockStart(Integer block) {
+        return this.buffer.getLong(HEADER_SIZE + block * 8);
+    }
+
+    public Long getBlockEnd(Integer block) {
+        return this.buffer.getLong(HEADER_SIZE + (block + 1) * 8);
+    }
+
+    /**
+     * Returns the blocks which can contain at least one of the literals, in the file order. A literal shorter
+     * than a trigram can be anywhere, and so can anything if there are no literals.
+     *
+     * @param literals
+     * @return
+     */
+    public List<Integer> candidateBlocks(List<byte[]> literals) {
+        boolean[] candidates = new boolean[this.blocks];
+        if(literals == null || literals.isEmpty()) {
+            Arrays.fill(candidates, true);
+        } else {
+            for(byte[] literal : literals) {
+                int[] blocks = candidateBlocks(literal);
+                if(blocks == null) {
+                    Arrays.fill(candidates, true);
+                    break;
+                }
+                for(int block : blocks) {
+                    candidates[block] = true;
+                }
+            }
+        }
+
+        List<Integer> result = new ArrayList<>();
+        for(Integer block = 0; block < candidates.length; block++) {
+            if(candidates[block]) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the blocks containing every trigram of the literal, or null if the literal has no trigrams.
+     *
+     * @param literal
+     * @return
+     */
+    private int[] candidateBlocks(byte[] literal) {
+        int[] result = null;
+        for(int i = 0; i + 2 < literal.length; i++) {
+            int[] blocks = postings(trigram(literal[i], literal[i + 1], literal[i + 2]));
+            result = result == null ? blocks : intersect(result, blocks);
+            if(result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] postings(int trigram) {
+        /*
+         * Binary search over the trigram entries
+         */
+        int low = 0, high = this.trigrams - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = this.entriesOffset + middle * ENTRY_SIZE;
+            int value = this.buffer.getInt(entry);
+            if(value < trigram) {
+                low = middle + 1;
+            } else if(value > trigram) {
+                high = middle - 1;
+            } else {
+                int[] blocks = new int[this.buffer.getInt(entry + 4)];
+                int position = this.postingsOffset + (int) this.buffer.getLong(entry + 8);
+                int block = 0;
+                for(int n = 0; n < blocks.length; n++) {
+                    int delta = 0, shift = 0;
+                    byte b;
+                    do {
+                        b = this.buffer.get(position++);
+                        delta |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while((b & 0x80) != 0);
+                    block += delta;
+                    blocks[n] = block;
+                }
+                return blocks;
+            }
+        }
+        return new int[0];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] < b[j]) {
+                i++;
+            } else if(a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int trigram(byte b0, byte b1, byte b2) {
+        return ((b0 & 0xff) << 16) | ((b1 & 0xff) << 8) | (b2 & 0xff);
+    }
+
+    /**
+     * Returns the sorted distinct trigrams within the lines of the [start, end) range.
+     *
+     * @param mMapRead
+     * @param start
+     * @param end
+     * @return
+     */
+    private static int[] trigrams(MemoryMappedFileRead mMapRead, Long start, Long end) {
+        if(end - start < 3) {
+            return new int[0];
+        }
+        int[] trigrams = new int[(int) (end - start - 2)];
+        int count = 0, t = 0, lineBytes = 0;
+
+        Integer segment = mMapRead.getSegmentIndex(start);
+        Long segmentOffset = mMapRead.getSegmentOffset(segment);
+        ByteBuffer buffer = mMapRead.getSegment(segment);
+        Boolean inSegment = end - segmentOffset <= buffer.limit();
+
+        for(long p = start; p < end; p++) {
+            byte b = inSegment ? buffer.get((int) (p - segmentOffset)) : mMapRead.get(p);
+            if(b == LineScanner.EOL) {
+                lineBytes = 0;
+                continue;
+            }
+            t = ((t << 8) | (b & 0xff)) & 0xffffff;
+            if(++lineBytes >= 3) {
+                trigrams[count++] = t;
+            }
+        }
+
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for(int i = 0; i < count; i++) {
+            if(distinct == 0 || trigrams[distinct - 1] != trigrams[i]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Block list of a trigram, as varint encoded deltas.
+     */
+    private static class Postings {
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int lastBlock;
+
+        void add(int block) {
+            int delta = block - this.lastBlock;
+            this.lastBlock = block;
+            this.count++;
+            if(this.length + 5 > this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            while((delta & ~0x7f) != 0) {
+                this.data[this.length++] = (byte) ((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            this.data[this.length++] = (byte) delta;
+        }
+    }
+}
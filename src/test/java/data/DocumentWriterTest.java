@@ -18,12 +18,23 @@ package data;
 
 import conf.Configuration;
 import file.ConcurrentFileTextSearch;
+import file.FileDataBlock;
+import io.BlockCache;
+import io.CRC32C;
+import io.CompressionCodec;
+import io.CompressionCodecs;
+import io.FileDataDictionary;
+import io.FileDataReader;
+import io.FileDataRecordFormat;
 import io.FileDataWriter;
 import junit.framework.TestCase;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -115,6 +126,351 @@ public class DocumentWriterTest extends TestCase {
         }
     }
 
+    @Test
+    public void testRecordFormat() {
+        try {
+            byte[] check = "123456789".getBytes();
+            CRC32C crc = new CRC32C();
+            crc.update(check, 0, check.length);
+            assertEquals(0xe3069283L, crc.getValue());
+            assertEquals(0xe3069283, CRC32C.checksum(ByteBuffer.wrap(check)).intValue());
+            ByteBuffer direct = ByteBuffer.allocateDirect(check.length);
+            direct.put(check).flip();
+            assertEquals(0xe3069283, CRC32C.checksum(direct).intValue());
+
+            Document document = new Document(7L, "document7");
+            document.setContent(getRandomCharacters(3000));
+            byte[] data = Document.serialize(document);
+            byte[] binary = FileDataRecordFormat.encode("document7", data, FileDataRecordFormat.VERSION_BINARY);
+            byte[] base64 = FileDataRecordFormat.encode("document7", data, FileDataRecordFormat.VERSION_BASE64);
+            assertEquals(FileDataRecordFormat.HEADER_SIZE + "document7".length() + data.length, binary.length);
+            assertTrue(base64.length > data.length * 4 / 3);
+
+            for(byte[] record : Arrays.asList(binary, base64)) {
+                assertTrue(Arrays.equals(data, FileDataRecordFormat.decode(record)));
+                /*
+                 * A record within a bigger buffer
+                 */
+                ByteBuffer buffer = ByteBuffer.allocateDirect(record.length + 20);
+                buffer.position(10);
+                buffer.put(record);
+                buffer.position(10);
+                assertEquals("document7", FileDataRecordFormat.getKey(buffer));
+                assertEquals(document.getContent(),
+                        Document.deserialize(FileDataRecordFormat.decode(buffer)).getContent());
+            }
+            assertEquals(FileDataRecordFormat.VERSION_BASE64,
+                    FileDataRecordFormat.getVersion(ByteBuffer.wrap(base64)));
+
+            /*
+             * The data is sliced in place and verified
+             */
+            ByteBuffer payload = FileDataRecordFormat.decode(ByteBuffer.wrap(binary));
+            assertEquals(FileDataRecordFormat.HEADER_SIZE + "document7".length(), payload.arrayOffset());
+            binary[binary.length - 1]++;
+            try {
+                FileDataRecordFormat.decode(binary);
+                assertTrue(false);
+            } catch (IOException e) {
+                assertEquals("record checksum mismatch", e.getMessage());
+            }
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testRecordCompression() {
+        try {
+            StringBuilder text = new StringBuilder();
+            for(int i = 0; i < 400; i++) {
+                text.append("line ").append(i % 37).append(" of a quite repetitive document\n");
+            }
+            byte[] compressible = text.toString().getBytes("UTF-8");
+            byte[] random = new byte[5000];
+            new Random(3).nextBytes(random);
+
+            for(Integer compression : Arrays.asList(CompressionCodecs.DEFLATE, CompressionCodecs.LZ)) {
+                byte[] record = FileDataRecordFormat.encodeCompressed("document8", compressible, compression);
+                assertEquals(compression.byteValue(), record[5]);
+                assertTrue(record.length < compressible.length / 4);
+                assertEquals(FileDataRecordFormat.VERSION_COMPRESSED,
+                        FileDataRecordFormat.getVersion(ByteBuffer.wrap(record)));
+                assertEquals("document8", FileDataRecordFormat.getKey(ByteBuffer.wrap(record)));
+                assertTrue(Arrays.equals(compressible, FileDataRecordFormat.decode(record)));
+
+                /*
+                 * The header is covered by the checksum, a corrupted length is not allocated
+                 */
+                for(int position : Arrays.asList(16, 18)) {
+                    byte[] corrupted = record.clone();
+                    corrupted[position] ^= 0x70;
+                    try {
+                        FileDataRecordFormat.decode(corrupted);
+                        assertTrue(false);
+                    } catch (IOException e) {
+                        assertEquals("record checksum mismatch", e.getMessage());
+                    }
+                }
+
+                /*
+                 * Records which do not compress, or too small to compress, are stored
+                 */
+                for(byte[] data : Arrays.asList(random, "small".getBytes())) {
+                    record = FileDataRecordFormat.encodeCompressed("document8", data, compression);
+                    assertEquals(0, record[5]);
+                    assertEquals(FileDataRecordFormat.COMPRESSED_HEADER_SIZE + "document8".length() + data.length,
+                            record.length);
+                    assertTrue(Arrays.equals(data, FileDataRecordFormat.decode(record)));
+                }
+            }
+
+            /*
+             * Long literals, long and overlapping matches and matches at the end of the data
+             */
+            CompressionCodec codec = CompressionCodecs.get(CompressionCodecs.LZ);
+            Random r = new Random(5);
+            for(int size : Arrays.asList(0, 1, 4, 15, 16, 300, 70000)) {
+                byte[] data = new byte[size];
+                for(int i = 0; i < size; i++) {
+                    data[i] = (byte) (i % 1000 < 500 ? r.nextInt(256) : i % 1000 < 800 ? 'a' : data[i - 500]);
+                }
+                byte[] output = new byte[size + size / 255 + 16];
+                int length = codec.compress(data, 0, size, output, 0, output.length);
+                byte[] decompressed = new byte[size];
+                codec.decompress(ByteBuffer.wrap(output, 0, length), decompressed);
+                assertTrue(Arrays.equals(data, decompressed));
+                if(length > 1) {
+                    try {
+                        codec.decompress(ByteBuffer.wrap(output, 0, length - 1), new byte[size]);
+                        assertTrue(false);
+                    } catch (IOException e) {
+                        assertEquals("corrupt compressed record", e.getMessage());
+                    }
+                }
+            }
+            assertEquals(-1, codec.compress(random, 0, random.length, new byte[5000], 0, 4000).intValue());
+
+            Document document = new Document(8L, "document8");
+            document.setContent(text.toString());
+            byte[] record = FileDataRecordFormat.encode("document8", Document.serialize(document));
+            assertEquals(document.getContent(),
+                    Document.deserialize(FileDataRecordFormat.decode(ByteBuffer.wrap(record))).getContent());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testRecordDictionary() {
+        File dataFile = new File(Configuration.getResourcePath(), "data_999.dat");
+        try {
+            Random r = new Random(11);
+            String[] cities = { "Madrid", "London", "Paris", "Berlin", "Rome", "Lisbon" };
+            List<byte[]> samples = new ArrayList<>(), records = new ArrayList<>();
+            for(int i = 0; i < 400; i++) {
+                Document document = new Document((long) i, "json" + i);
+                document.setContent("{\"id\": " + r.nextInt(100000) + ", \"user\": {\"name\": \"user" +
+                        r.nextInt(1000) + "\", \"email\": \"user" + r.nextInt(1000) + "@example.com\", \"city\": \"" +
+                        cities[r.nextInt(cities.length)] + "\"}, \"created\": \"2016-0" + (1 + r.nextInt(9)) +
+                        "-1" + r.nextInt(9) + "T10:" + (10 + r.nextInt(50)) + ":00Z\", \"active\": " +
+                        r.nextBoolean() + "}");
+                (i < 200 ? samples : records).add(Document.serialize(document));
+            }
+            byte[] dictionary = FileDataDictionary.train(samples, FileDataDictionary.MAX_SIZE);
+            assertTrue(dictionary.length > 0 && dictionary.length <= FileDataDictionary.MAX_SIZE);
+            assertTrue(FileDataDictionary.train(samples, 100).length <= 100);
+
+            byte[] header = FileDataDictionary.encodeHeaderBlock(dictionary);
+            assertEquals(Configuration.BLOCK_SIZE.intValue(), header.length);
+            assertTrue(Arrays.equals(dictionary, FileDataDictionary.decodeHeaderBlock(header)));
+            assertEquals(0, FileDataDictionary.decodeHeaderBlock(FileDataDictionary.encodeHeaderBlock(
+                    new byte[0])).length);
+            assertNull(FileDataDictionary.decodeHeaderBlock(FileDataRecordFormat.encode("json", records.get(0))));
+
+            /*
+             * The dictionary is read from the header block of the data file
+             */
+            FileDataDictionary.clear();
+            Files.write(dataFile.toPath(), header);
+            FileDataDictionary fileDictionary = FileDataDictionary.get(dataFile.getName());
+            assertTrue(fileDictionary.hasHeaderBlock());
+            assertTrue(Arrays.equals(dictionary, fileDictionary.getDictionary()));
+            assertSame(fileDictionary, FileDataDictionary.get(dataFile.getName()));
+
+            long size = 0, compressed = 0;
+            for(byte[] data : records) {
+                byte[] record = FileDataRecordFormat.encode("json", data, fileDictionary);
+                assertEquals(CompressionCodecs.DEFLATE_DICTIONARY.byteValue(), record[5]);
+                assertTrue(Arrays.equals(data, bytes(FileDataRecordFormat.decode(ByteBuffer.wrap(record),
+                        fileDictionary))));
+                size += data.length;
+                compressed += record.length - FileDataRecordFormat.COMPRESSED_HEADER_SIZE - "json".length();
+            }
+            assertTrue(size > compressed * 3);
+
+            try {
+                FileDataRecordFormat.decode(FileDataRecordFormat.encode("json", records.get(0), fileDictionary));
+                assertTrue(false);
+            } catch (IOException e) {
+                assertEquals("record compressed with a missing dictionary", e.getMessage());
+            }
+            header[FileDataDictionary.HEADER_SIZE]++;
+            try {
+                FileDataDictionary.decodeHeaderBlock(header);
+                assertTrue(false);
+            } catch (IOException e) {
+                assertEquals("dictionary checksum mismatch", e.getMessage());
+            }
+        } catch (IOException e) {
+            assertTrue(false);
+        } catch (InterruptedException e) {
+            assertTrue(false);
+        } finally {
+            dataFile.delete();
+            FileDataDictionary.clear();
+        }
+    }
+
+    @Test
+    public void testBlockCache() {
+        File dataFile = new File(Configuration.getResourcePath(), "data_998.dat");
+        try {
+            byte[] block = new byte[Configuration.BLOCK_SIZE];
+            BlockCache cache = new BlockCache(8);
+            for(long id = 0; id < 4; id++) {
+                cache.put("hot", id, block, 100).close();
+            }
+            for(long id = 0; id < 8; id++) {
+                cache.put("scan", id, block, 100).close();
+            }
+
+            /*
+             * The hot blocks are read again after leaving the FIFO queue, and a long scan does not evict them
+             */
+            for(long id = 0; id < 4; id++) {
+                assertNull(cache.pin("hot", id));
+                cache.put("hot", id, block, 100).close();
+            }
+            for(long id = 100; id < 200; id++) {
+                cache.put("scan", id, block, 100).close();
+            }
+            Long hits = cache.getHits();
+            for(long id = 0; id < 4; id++) {
+                BlockCache.Page page = cache.pin("hot", id);
+                assertNotNull(page);
+                page.close();
+            }
+            assertEquals(hits + 4, cache.getHits().longValue());
+            assertEquals(8, cache.size().intValue());
+            assertTrue(cache.getEvictions() >= 100);
+
+            /*
+             * Pinned blocks are not evicted, and a pinned block is not changed by a write
+             */
+            cache = new BlockCache(2);
+            block[0] = 1;
+            BlockCache.Page a = cache.put("f", 0L, block, 10);
+            BlockCache.Page b = cache.put("f", 1L, block, 10);
+            assertNull(cache.put("f", 2L, block, 10));
+            a.close();
+            cache.put("f", 2L, block, 10).close();
+            assertNull(cache.pin("f", 0L));
+            block[0] = 2;
+            cache.update("f", 1L, block);
+            assertEquals(1, b.getData().get(0));
+            b.close();
+            assertNull(cache.pin("f", 1L));
+            cache.update("f", 2L, block);
+            BlockCache.Page c = cache.pin("f", 2L);
+            assertEquals(2, c.getData().get(0));
+            assertEquals(Configuration.BLOCK_SIZE, c.getLength());
+            c.close();
+
+            /*
+             * The reads of the data blocks go through the shared cache
+             */
+            byte[] data = getRandomCharacters(Configuration.BLOCK_SIZE * 2 + 100).getBytes();
+            Files.write(dataFile.toPath(), data);
+            BlockCache.getInstance().invalidate(dataFile.getName());
+            FileDataReader reader = new FileDataReader(dataFile.getName());
+            Long misses = BlockCache.getInstance().getMisses();
+            List<FileDataBlock> blocks = reader.getDataBlocks(0L, 10, 2, data.length - 10);
+            assertEquals(misses + 3, BlockCache.getInstance().getMisses().longValue());
+            hits = BlockCache.getInstance().getHits();
+            assertEquals(blocks.size(), reader.getDataBlocks(0L, 10, 2, data.length - 10).size());
+            assertEquals(hits + 3, BlockCache.getInstance().getHits().longValue());
+            assertEquals(new String(data, 10, Configuration.BLOCK_SIZE - 10), new String(blocks.get(0).getData()));
+            assertEquals(100, reader.getLastDataBlock().getDataLength().intValue());
+
+            /*
+             * The file changed without the writer, the last block is read again
+             */
+            Files.write(dataFile.toPath(), "12345".getBytes(), StandardOpenOption.APPEND);
+            assertEquals("12345", new String(reader.getLastDataBlock().getData(), 100, 5));
+        } catch (IOException e) {
+            assertTrue(false);
+        } catch (InterruptedException e) {
+            assertTrue(false);
+        } finally {
+            dataFile.delete();
+            BlockCache.getInstance().invalidate(dataFile.getName());
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    public void testDocumentCodecs() {
+        try {
+            String text = "caf\u00e9 \u65e5\u672c \ud83d\ude00 lone \ud83d end";
+            for(Integer codec : Arrays.asList(SerializableDocumentCodec.ID, BinaryDocumentCodec.ID)) {
+                for(Long id : Arrays.asList(0L, -5L, Long.MAX_VALUE, null)) {
+                    Document document = new Document(id, "document " + text);
+                    document.setContent(id == null ? null : text + getRandomCharacters(300));
+                    byte[] data = DocumentCodecs.encode(document, codec);
+                    Document decoded = Document.deserialize(data);
+                    assertEquals(id, decoded.getID());
+                    if(codec.equals(SerializableDocumentCodec.ID)) {
+                        assertEquals(document.getContent(), decoded.getContent());
+                        assertEquals(document.getName(), decoded.getName());
+                    } else {
+                        assertEquals(document.getContent() == null ? null :
+                                new String(document.getContent().getBytes("UTF-8"), "UTF-8"), decoded.getContent());
+                        assertEquals(new String(document.getName().getBytes("UTF-8"), "UTF-8"), decoded.getName());
+                    }
+                }
+            }
+
+            /*
+             * The documents stored before the codecs are plain serialization streams
+             */
+            Document document = new Document(3L, "test3");
+            document.setContent(getRandomCharacters(100));
+            byte[] serialized = DocumentCodecs.encode(document, SerializableDocumentCodec.ID);
+            assertEquals((byte) 0xac, serialized[0]);
+            byte[] binary = Document.serialize(document);
+            assertEquals(BinaryDocumentCodec.ID.byteValue(), binary[0]);
+            assertTrue(binary.length < serialized.length);
+            assertTrue(binary.length <= new BinaryDocumentCodec().getMaxEncodedSize(document) + 1);
+            assertEquals(document.getContent(), Document.deserialize(serialized).getContent());
+
+            binary[0] = 99;
+            try {
+                Document.deserialize(binary);
+                assertTrue(false);
+            } catch (IOException e) {
+                assertEquals("unknown document codec [99]", e.getMessage());
+            }
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
     private static void deleteDataFiles() {
         File directory = new File(Configuration.getResourcePath());
         for(File f : directory.listFiles()) {
@@ -17,12 +17,48 @@
 package mmap;
 
 import conf.Configuration;
+import file.ApproximateMatcher;
+import file.BoyerMooreHorspoolMatcher;
+import file.ChannelTextSearch;
+import file.CompressedFileTextSearch;
+import file.ConcurrentDirectoryTextSearch;
 import file.ConcurrentFileTextSearch;
+import file.FollowTextSearch;
+import file.RegexMatcher;
+import file.SearchMatch;
+import file.SearchMonitor;
+import file.SearchStatistics;
+import io.LineIndex;
+import io.MemoryMappedFileRead;
+import io.ReadBackend;
+import io.TrigramIndex;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * Concurrent search tests.
@@ -46,4 +82,738 @@ public class ConcurrentFileTextSearchTest extends TestCase {
             assertTrue(false);
         }
     }
+
+    @Test
+    public void testSearchRegionBoundaries() {
+        try {
+            /*
+             * Many small regions, most of them starting in the middle of a line
+             */
+            List<String> resultLines = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"),
+                    "hi", 37);
+            assertEquals(5, resultLines.size());
+            assertEquals("cccccccccchiccccccc", resultLines.get(0));
+            assertEquals("hixxxxxxxxxxxxxxxxx", resultLines.get(4));
+            assertTrue(resultLines.contains("himmmmmmmmmmmmmmmmm"));
+            assertTrue(resultLines.contains("hixxxxxxxxxxxxxxxxx"));
+
+            resultLines = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"), "hello", 1);
+            assertEquals(25, resultLines.size());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testStreamingSearch() {
+        try {
+            List<SearchMatch> matches = new ArrayList<>();
+            SearchStatistics statistics = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"),
+                    "hi", 4, matches::add, null);
+            assertEquals(5, matches.size());
+            assertEquals(Long.valueOf(5), statistics.getMatches());
+            assertFalse(statistics.isLimitReached());
+            assertTrue(matches.stream().anyMatch(m -> m.getOffset() == 312L && m.getLine().equals("himmmmmmmmmmmmmmmmm")));
+            assertEquals(4, statistics.getChunks().size());
+            assertEquals(Long.valueOf(5), statistics.getChunks().stream().map(c -> c.getMatches())
+                    .reduce(0L, Long::sum));
+            assertEquals(Long.valueOf(649), statistics.getChunks().get(3).getEnd());
+
+            matches.clear();
+            statistics = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"), "hello", 4,
+                    matches::add, 3L);
+            assertEquals(3, matches.size());
+            assertTrue(statistics.isLimitReached());
+
+            /*
+             * An interrupted search fails instead of returning the partial statistics
+             */
+            try {
+                concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"), "hi", 4,
+                        searchMatch -> Thread.currentThread().interrupt(), null);
+                assertTrue(false);
+            } catch (InterruptedIOException e) {
+                assertTrue(Thread.interrupted());
+            }
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testMultiplePatternSearch() {
+        try {
+            List<SearchMatch> matches = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"),
+                    Arrays.asList("hi", "kkkkk", "ello", "zzz"), 3);
+            assertEquals(31, matches.size());
+            SearchMatch kLine = matches.stream().filter(m -> m.getLine().startsWith("kkk")).findFirst().get();
+            assertEquals(Arrays.asList("hi", "kkkkk"), kLine.getPatterns());
+            assertEquals(25, matches.stream().filter(m -> m.getPatterns().equals(Arrays.asList("ello"))).count());
+            assertEquals(1, matches.stream().filter(m -> m.getPatterns().equals(Arrays.asList("zzz"))).count());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testRegexSearch() {
+        try {
+            assertEquals(Arrays.asList(" timeout"), RegexMatcher.requiredLiterals("ERROR [0-9]+ timeout"));
+            assertEquals(Arrays.asList("colo"), RegexMatcher.requiredLiterals("colou?r"));
+            assertEquals(Arrays.asList("foo", "bar"), RegexMatcher.requiredLiterals("^foo\\d*|(x|y)bar"));
+            assertEquals(Arrays.asList("baz"), RegexMatcher.requiredLiterals("x(foo|bar)baz"));
+            assertTrue(RegexMatcher.requiredLiterals("(foo|bar)|baz").isEmpty());
+            assertTrue(RegexMatcher.requiredLiterals("[a-z]+|baz").isEmpty());
+
+            /*
+             * Escapes longer than two characters end the literal runs
+             */
+            assertEquals(Arrays.asList(" timeout"), RegexMatcher.requiredLiterals("x\\p{Alpha}+ timeout"));
+            assertEquals(Arrays.asList("bar"), RegexMatcher.requiredLiterals("\\x41bar"));
+            assertEquals(Arrays.asList("bar"), RegexMatcher.requiredLiterals("\\x{41}bar"));
+            assertEquals(Arrays.asList("bar"), RegexMatcher.requiredLiterals("\\u0041bar"));
+            assertEquals(Arrays.asList("bar"), RegexMatcher.requiredLiterals("\\0101bar"));
+            assertEquals(Arrays.asList("xyz"), RegexMatcher.requiredLiterals("\\cJxyz"));
+            assertEquals(Arrays.asList("q"), RegexMatcher.requiredLiterals("(?<nm>z)\\k<nm>q"));
+            assertEquals(Arrays.asList("bar"), RegexMatcher.requiredLiterals("\\N{LATIN SMALL LETTER A}bar"));
+            assertEquals(Arrays.asList("a.b"), RegexMatcher.requiredLiterals("a\\.b"));
+            File escapes = File.createTempFile("escapes", ".txt");
+            escapes.deleteOnExit();
+            Files.write(escapes.toPath(), "xA timeout\nzzq\nAbar\nAxyz\n".getBytes());
+            for(String regex : Arrays.asList("x\\p{Alpha}+ timeout", "(?<nm>z)\\k<nm>q", "\\0101bar",
+                    "\\x41bar", "\\u0041xyz")) {
+                assertEquals(regex, 1, concurrentFileTextSearch.search(escapes, Pattern.compile(regex), 2).size());
+            }
+
+            List<SearchMatch> matches = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"),
+                    Pattern.compile("^hi[a-z]+$|k+hi"), 4);
+            assertEquals(3, matches.size());
+
+            assertFalse(new RegexMatcher(Pattern.compile("[0-9]+")).hasPrefilter());
+            matches = concurrentFileTextSearch.search(Configuration.getResource("mmapfile.txt"),
+                    Pattern.compile("^(.)\\1{18}$"), 4);
+            assertEquals(20, matches.size());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testDirectorySearch() {
+        try {
+            File directory = Files.createTempDirectory("search").toFile();
+            File rotated = new File(directory, "rotated");
+            rotated.mkdir();
+            Files.copy(Configuration.getResource("mmapfile.txt").toPath(), new File(directory, "a.log").toPath());
+            Files.write(new File(directory, "b.log").toPath(), "hi\nho\n".getBytes());
+            Files.write(new File(directory, "c.txt").toPath(), "hi\n".getBytes());
+            Files.write(new File(rotated, "d.log").toPath(), new byte[0]);
+            StringBuilder big = new StringBuilder();
+            for(Integer i = 0; i < 2000; i++) {
+                big.append(i % 100 == 0 ? "hi there all quiet.\n" : "all quiet on a disk\n");
+            }
+            Files.write(new File(rotated, "e.log").toPath(), big.toString().getBytes());
+
+            List<File> files = ConcurrentDirectoryTextSearch.listFiles(directory, "*.log");
+            assertEquals(4, files.size());
+
+            List<SearchMatch> matches = ConcurrentDirectoryTextSearch.search(directory, "*.log", "hi");
+            assertEquals(5 + 1 + 20, matches.size());
+            assertEquals(20, matches.stream().filter(m -> m.getFile().getName().equals("e.log")).count());
+            assertTrue(matches.stream().anyMatch(m -> m.getFile().getName().equals("b.log") && m.getOffset() == 0L));
+            assertTrue(matches.stream().anyMatch(m -> m.getFile().getName().equals("e.log") &&
+                    m.getOffset() == 100 * 20L && m.getLine().equals("hi there all quiet.")));
+
+            matches = ConcurrentDirectoryTextSearch.search(directory, "rotated/*", "hi");
+            assertEquals(20, matches.size());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testIndexedSearch() {
+        try {
+            File f = Files.createTempFile("indexed", ".log").toFile();
+            StringBuilder data = new StringBuilder();
+            for(Integer i = 0; i < 2000; i++) {
+                data.append(i % 100 == 0 ? "hi there all quiet.\n" : "all quiet on a disk\n");
+            }
+            Files.write(f.toPath(), data.toString().getBytes());
+
+            /*
+             * Small blocks, so only 20 of the 40 blocks contain "there"
+             */
+            MemoryMappedFileRead mMapRead = new MemoryMappedFileRead(f);
+            try {
+                TrigramIndex.build(f, mMapRead, 1000L);
+            } finally {
+                mMapRead.unmap();
+            }
+            TrigramIndex index = TrigramIndex.open(f);
+            assertNotNull(index);
+            assertEquals(40, index.getBlockCount().intValue());
+            assertEquals(20, index.candidateBlocks(new BoyerMooreHorspoolMatcher("there").requiredLiterals()).size());
+            assertEquals(0, index.candidateBlocks(new BoyerMooreHorspoolMatcher("nowhere").requiredLiterals()).size());
+            assertEquals(40, index.candidateBlocks(new BoyerMooreHorspoolMatcher("hi").requiredLiterals()).size());
+            index.unmap();
+
+            List<SearchMatch> matches = ConcurrentFileTextSearch.searchIndexed(f,
+                    new BoyerMooreHorspoolMatcher("there"));
+            assertEquals(20, matches.size());
+            assertTrue(matches.stream().anyMatch(m -> m.getOffset() == 100 * 20L));
+            assertEquals(20, ConcurrentFileTextSearch.searchIndexed(f,
+                    new RegexMatcher(Pattern.compile("hi the[r]e"))).size());
+
+            /*
+             * The index is not valid anymore once the file changes
+             */
+            Files.write(f.toPath(), "one more line there\n".getBytes(), StandardOpenOption.APPEND);
+            assertNull(TrigramIndex.open(f));
+            assertEquals(21, ConcurrentFileTextSearch.searchIndexed(f,
+                    new BoyerMooreHorspoolMatcher("there")).size());
+            index = TrigramIndex.open(f);
+            assertNotNull(index);
+            index.unmap();
+
+            TrigramIndex.indexFile(f).delete();
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testFollowSearch() {
+        try {
+            File f = Files.createTempFile("follow", ".log").toFile();
+            Files.write(f.toPath(), "hi a\nxx\nhi b".getBytes());
+            FollowTextSearch follow = new FollowTextSearch(f, new BoyerMooreHorspoolMatcher("hi"), true);
+            List<SearchMatch> matches = new ArrayList<>();
+
+            /*
+             * The last line is not complete yet
+             */
+            assertEquals(1L, follow.poll(matches::add).longValue());
+            assertEquals(8L, follow.getPosition().longValue());
+            assertEquals(0L, follow.poll(matches::add).longValue());
+
+            Files.write(f.toPath(), "c\nhi d\n".getBytes(), StandardOpenOption.APPEND);
+            assertEquals(2L, follow.poll(matches::add).longValue());
+            assertEquals(Arrays.asList("hi a", "hi bc", "hi d"),
+                    matches.stream().map(SearchMatch::getLine).collect(Collectors.toList()));
+            assertEquals(14L, matches.get(2).getOffset().longValue());
+
+            FollowTextSearch tail = new FollowTextSearch(f, new BoyerMooreHorspoolMatcher("hi"), false);
+            assertEquals(0L, tail.poll(matches::add).longValue());
+            Files.write(f.toPath(), "hi e\n".getBytes(), StandardOpenOption.APPEND);
+            assertEquals(1L, tail.poll(matches::add).longValue());
+
+            /*
+             * Truncated files are followed from the start again
+             */
+            Files.write(f.toPath(), "hi f\n".getBytes());
+            matches.clear();
+            assertEquals(1L, follow.poll(matches::add).longValue());
+            assertEquals(0L, matches.get(0).getOffset().longValue());
+
+            /*
+             * A line written in several steps, only the appended data is looked at for its EOL
+             */
+            matches.clear();
+            Files.write(f.toPath(), "hi g".getBytes(), StandardOpenOption.APPEND);
+            assertEquals(0L, follow.poll(matches::add).longValue());
+            Files.write(f.toPath(), "g".getBytes(), StandardOpenOption.APPEND);
+            assertEquals(0L, follow.poll(matches::add).longValue());
+            assertEquals(0L, follow.poll(matches::add).longValue());
+            Files.write(f.toPath(), "g\nhi".getBytes(), StandardOpenOption.APPEND);
+            assertEquals(1L, follow.poll(matches::add).longValue());
+            assertEquals("hi ggg", matches.get(0).getLine());
+            assertEquals(12L, follow.getPosition().longValue());
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testLineIndexSearch() {
+        try {
+            File f = Files.createTempFile("lines", ".txt").toFile();
+            Files.copy(Configuration.getResource("mmapfile.txt").toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+
+            LineIndex index = LineIndex.getIndex(f);
+            assertEquals(50L, index.getLineCount().longValue());
+            assertEquals(0L, index.getLineStart(1L).longValue());
+            assertEquals(20L, index.getLineStart(2L).longValue());
+            assertEquals(2L, index.getLineNumber(25L).longValue());
+            assertEquals(50L, index.getLineNumber(648L).longValue());
+            assertEquals(649L, index.getLineEnd(50L).longValue());
+            MemoryMappedFileRead mMapRead = new MemoryMappedFileRead(f);
+            assertEquals(Arrays.asList("hello", "bbbbbbbbbbbbbbbbbbb"), index.getLines(mMapRead, 2L, 3L));
+            mMapRead.unmap();
+            index.unmap();
+
+            List<SearchMatch> matches = ConcurrentFileTextSearch.searchLines(f, "hi", 4);
+            matches.sort((a, b) -> a.getOffset().compareTo(b.getOffset()));
+            assertEquals(Arrays.asList(5L, 21L, 25L, 35L, 45L),
+                    matches.stream().map(SearchMatch::getLineNumber).collect(Collectors.toList()));
+            assertEquals("himmmmmmmmmmmmmmmmm", matches.get(2).getLine());
+
+            LineIndex.indexFile(f).delete();
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testCaseInsensitiveSearch() {
+        try {
+            File f = Files.createTempFile("case", ".txt").toFile();
+            Files.write(f.toPath(), "\u00c4rger im B\u00fcro\n\u00e4rger\n\u00c4RGER\nnothing\n\u03a3\u039f\u03a6\u038a\u0391 \u03c3\u03bf\u03c6\u03af\u03b1\n".getBytes("UTF-8"));
+
+            List<SearchMatch> matches = ConcurrentFileTextSearch.searchIgnoreCase(f, "\u00e4rger", 2);
+            matches.sort((a, b) -> a.getOffset().compareTo(b.getOffset()));
+            assertEquals(Arrays.asList("\u00c4rger im B\u00fcro", "\u00e4rger", "\u00c4RGER"),
+                    matches.stream().map(SearchMatch::getLine).collect(Collectors.toList()));
+            assertEquals(1, ConcurrentFileTextSearch.searchIgnoreCase(f, "\u03a3\u03bf\u03c6\u03af\u03b1", 2).size());
+            assertEquals(0, ConcurrentFileTextSearch.searchIgnoreCase(f, "arg\u00e9r", 2).size());
+
+            assertEquals(25, ConcurrentFileTextSearch.searchIgnoreCase(Configuration.getResource("mmapfile.txt"),
+                    "HeLLo", 4).size());
+            RegexMatcher regexMatcher = new RegexMatcher(Pattern.compile("hell[o]", Pattern.CASE_INSENSITIVE));
+            assertTrue(regexMatcher.hasPrefilter());
+            assertFalse(new RegexMatcher(Pattern.compile("hello", Pattern.CASE_INSENSITIVE |
+                    Pattern.UNICODE_CASE)).hasPrefilter());
+            assertEquals(2, ConcurrentFileTextSearch.search(f, Pattern.compile("RGER$", Pattern.CASE_INSENSITIVE),
+                    2).size());
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testResultModes() {
+        try {
+            File f = Configuration.getResource("mmapfile.txt");
+            assertEquals(5L, ConcurrentFileTextSearch.count(f, "hi", 4).longValue());
+            assertEquals(0L, ConcurrentFileTextSearch.count(f, "nowhere", 4).longValue());
+            assertTrue(ConcurrentFileTextSearch.exists(f, "hi", 4));
+            assertFalse(ConcurrentFileTextSearch.exists(f, "nowhere", 4));
+
+            long[] offsets = ConcurrentFileTextSearch.offsets(f, "hi", 4);
+            List<SearchMatch> matches = ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hi"), 4,
+                    ConcurrentFileTextSearch.RESULT_LINES).getMatches();
+            assertEquals(5, offsets.length);
+            assertEquals(5, matches.size());
+            for(Integer n = 0; n < offsets.length; n++) {
+                assertEquals(offsets[n], matches.get(n).getOffset().longValue());
+            }
+            assertEquals(25, ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hello"), 4,
+                    ConcurrentFileTextSearch.RESULT_COUNT).getStatistics().getMatches().longValue());
+
+            File directory = Files.createTempDirectory("modes").toFile();
+            Files.write(new File(directory, "a.log").toPath(), "ho\nhi\nhi\n".getBytes());
+            Files.write(new File(directory, "b.log").toPath(), "ho\n".getBytes());
+            Files.write(new File(directory, "c.log").toPath(), "hi\n".getBytes());
+            List<File> files = ConcurrentDirectoryTextSearch.filesWithMatches(
+                    ConcurrentDirectoryTextSearch.listFiles(directory, "*.log"), new BoyerMooreHorspoolMatcher("hi"));
+            assertEquals(Arrays.asList("a.log", "c.log"),
+                    files.stream().map(File::getName).collect(Collectors.toList()));
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testContextSearch() {
+        try {
+            File f = Configuration.getResource("mmapfile.txt");
+            List<SearchMatch> matches = ConcurrentFileTextSearch.search(f, "hi", 16, 2, 2);
+            assertEquals(5, matches.size());
+            for(Integer n = 1; n < matches.size(); n++) {
+                assertTrue(matches.get(n - 1).getOffset() < matches.get(n).getOffset());
+            }
+            assertEquals(Arrays.asList("bbbbbbbbbbbbbbbbbbb", "hello"),
+                    matches.get(0).getBefore().stream().map(SearchMatch::getLine).collect(Collectors.toList()));
+            assertEquals(Arrays.asList("hello", "ddddddddddddddddddd"),
+                    matches.get(0).getAfter().stream().map(SearchMatch::getLine).collect(Collectors.toList()));
+
+            /*
+             * The lines 21 and 25 share the line 23, which is only delivered once
+             */
+            assertEquals(2, matches.get(1).getAfter().size());
+            assertEquals(1, matches.get(2).getBefore().size());
+            assertEquals("hello", matches.get(2).getBefore().get(0).getLine());
+            assertEquals(2, matches.get(4).getAfter().size());
+
+            List<SearchMatch> limited = new ArrayList<>();
+            SearchStatistics statistics = ConcurrentFileTextSearch.searchOrdered(f,
+                    new BoyerMooreHorspoolMatcher("hello"), 16, 0, 1, limited::add, 3L);
+            assertEquals(3, limited.size());
+            assertTrue(statistics.isLimitReached());
+            assertEquals("hello", limited.get(0).getLine());
+            assertEquals(20L, limited.get(0).getOffset().longValue());
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testReadBackends() {
+        try {
+            File f = Files.createTempFile("backends", ".txt").toFile();
+            StringBuilder data = new StringBuilder(new String(Files.readAllBytes(
+                    Configuration.getResource("mmapfile.txt").toPath())));
+            data.append("\n");
+            /*
+             * A line longer than the read buffers
+             */
+            int size = Configuration.READ_BUFFER_SIZE;
+            for(int i = 0; i < size + 100; i++) {
+                data.append(i == size ? 'h' : i == size + 1 ? 'i' : 'x');
+            }
+            data.append("\nhi at the end");
+            Files.write(f.toPath(), data.toString().getBytes());
+
+            for(Integer threads : Arrays.asList(1, 7, 64)) {
+                for(Integer backend : Arrays.asList(ReadBackend.MMAP, ReadBackend.FILE_CHANNEL, ReadBackend.STREAM)) {
+                    List<SearchMatch> matches = new ArrayList<>();
+                    ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hi"), threads, backend,
+                            matches::add, null);
+                    matches.sort((a, b) -> a.getOffset().compareTo(b.getOffset()));
+                    assertEquals(7, matches.size());
+                    assertEquals("cccccccccchiccccccc", matches.get(0).getLine());
+                    assertEquals(650L, matches.get(5).getOffset().longValue());
+                    assertEquals(Configuration.READ_BUFFER_SIZE + 100, matches.get(5).getLine().length());
+                    assertEquals("hi at the end", matches.get(6).getLine());
+                }
+            }
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testSearchInstrumentation() {
+        try {
+            File f = Configuration.getResource("mmapfile.txt");
+            assertEquals(649L, new MemoryMappedFileRead(f).getMappedBytes().longValue());
+
+            SearchStatistics statistics = ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hi"), 4,
+                    searchMatch -> { }, null);
+            assertEquals(5L, statistics.getMatches().longValue());
+            assertNull(statistics.getPageStatistics());
+
+            SearchMonitor.getInstance().setPageStatisticsEnabled(true);
+            try {
+                statistics = ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hi"), 4,
+                        searchMatch -> { }, null);
+            } finally {
+                SearchMonitor.getInstance().setPageStatisticsEnabled(false);
+            }
+            assertEquals(5L, statistics.getMatches().longValue());
+            assertNotNull(statistics.getPageStatistics());
+            assertFalse(statistics.getThreadNanos().isEmpty());
+            assertTrue(statistics.getBytesPerSecond() > 0);
+            if(new File("/proc/self/smaps").isFile()) {
+                /*
+                 * The mapping is rounded up to whole pages
+                 */
+                assertTrue(statistics.getPageStatistics().getMappedBytes() >= 649L);
+                assertTrue(statistics.getPageStatistics().getResidentBytes() > 0L);
+                assertTrue(statistics.getPageStatistics().getMinorFaults() >= 0L);
+            }
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(SearchMonitor.OBJECT_NAME);
+            assertTrue((Long) server.getAttribute(name, "Searches") > 0);
+            assertEquals(5L, server.getAttribute(name, "LastMatches"));
+
+            /*
+             * Every entry point is counted
+             */
+            Long searches = SearchMonitor.getInstance().getSearches();
+            assertEquals(5L, ConcurrentFileTextSearch.count(f, "hi", 4).longValue());
+            assertEquals(5, ConcurrentFileTextSearch.search(f, "hi", 4).size());
+            assertEquals(5, ConcurrentFileTextSearch.search(f, "hi", 4, 1, 1).size());
+            assertEquals(searches + 3L, SearchMonitor.getInstance().getSearches().longValue());
+            assertEquals(5L, server.getAttribute(name, "LastMatches"));
+        } catch (IOException | JMException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testCompressedSearch() {
+        try {
+            StringBuilder text = new StringBuilder(new String(Files.readAllBytes(
+                    Configuration.getResource("mmapfile.txt").toPath())));
+            text.append("\n");
+            /*
+             * Several decompression buffers, and a line longer than one of them
+             */
+            for(int i = 0; text.length() < Configuration.READ_BUFFER_SIZE * 3; i++) {
+                text.append(i % 1000 == 0 ? "line " + i + " hi\n" : "line " + i + "\n");
+            }
+            for(int i = 0; i < Configuration.READ_BUFFER_SIZE + 100; i++) {
+                text.append(i == 10 ? 'h' : i == 11 ? 'i' : 'x');
+            }
+            text.append("\nhi at the end");
+            byte[] data = text.toString().getBytes();
+            File plain = Files.createTempFile("compressed", ".txt").toFile();
+            Files.write(plain.toPath(), data);
+            List<SearchMatch> expected = new ArrayList<>();
+            ConcurrentFileTextSearch.search(plain, new BoyerMooreHorspoolMatcher("hi"), 4, ReadBackend.FILE_CHANNEL,
+                    expected::add, null);
+            expected.sort((a, b) -> a.getOffset().compareTo(b.getOffset()));
+
+            /*
+             * A single gzip member, members split within lines (some without any EOL) and a zlib stream
+             */
+            File single = Files.createTempFile("compressed", ".gz").toFile();
+            Files.write(single.toPath(), gzip(data, 0, data.length));
+            File multiple = Files.createTempFile("compressed", ".gz").toFile();
+            ByteArrayOutputStream members = new ByteArrayOutputStream();
+            int[] splits = { 0, 100, 105, 110, 200000, 1500000, 1500003, data.length - 5, data.length };
+            for(int i = 0; i < splits.length - 1; i++) {
+                members.write(gzip(data, splits[i], splits[i + 1]));
+            }
+            Files.write(multiple.toPath(), members.toByteArray());
+            File zlib = Files.createTempFile("compressed", ".z").toFile();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try(DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+                out.write(data);
+            }
+            Files.write(zlib.toPath(), deflated.toByteArray());
+
+            for(File f : Arrays.asList(single, multiple, zlib)) {
+                for(Integer threads : Arrays.asList(1, 4)) {
+                    List<SearchMatch> matches = new ArrayList<>();
+                    SearchStatistics statistics = CompressedFileTextSearch.search(f,
+                            new BoyerMooreHorspoolMatcher("hi"), threads, matches::add, null);
+                    assertEquals(data.length, statistics.getBytes().longValue());
+                    assertEquals(expected.size(), matches.size());
+                    for(int i = 0; i < matches.size(); i++) {
+                        assertEquals(expected.get(i).getOffset(), matches.get(i).getOffset());
+                        assertEquals(expected.get(i).getLine(), matches.get(i).getLine());
+                    }
+                }
+            }
+            assertTrue(CompressedFileTextSearch.isGzip(multiple));
+            assertFalse(CompressedFileTextSearch.isGzip(plain));
+            assertEquals(5, ConcurrentFileTextSearch.search(multiple, "hi", 4, m -> { }, 5L).getMatches().intValue());
+            assertEquals(expected.get(0).getOffset(),
+                    CompressedFileTextSearch.search(single, "hi", 4).get(0).getOffset());
+
+            /*
+             * A partial line left by a grown buffer, longer than the ring buffers, in one member and split in two
+             */
+            byte[] longLines = longLines();
+            File longFile = Files.createTempFile("compressed", ".gz").toFile();
+            ByteArrayOutputStream longMembers = new ByteArrayOutputStream();
+            longMembers.write(gzip(longLines, 0, longLines.length / 2));
+            longMembers.write(gzip(longLines, longLines.length / 2, longLines.length));
+            for(byte[] compressed : Arrays.asList(gzip(longLines, 0, longLines.length), longMembers.toByteArray())) {
+                Files.write(longFile.toPath(), compressed);
+                List<SearchMatch> matches = CompressedFileTextSearch.search(longFile, "hi", 4);
+                assertEquals(3, matches.size());
+                assertEquals(longLines.length - 6, matches.get(2).getOffset().longValue());
+            }
+            longFile.delete();
+
+            /*
+             * A truncated member
+             */
+            Files.write(single.toPath(), Arrays.copyOf(gzip(data, 0, data.length), 1000));
+            try {
+                CompressedFileTextSearch.search(single, "hi", 4);
+                assertTrue(false);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("unexpected end"));
+            }
+
+            for(File f : Arrays.asList(plain, single, multiple, zlib)) {
+                f.delete();
+            }
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testApproximateSearch() {
+        try {
+            /*
+             * Lines of random words compared with a plain edit distance table
+             */
+            Random random = new Random(19);
+            String[] words = { "connection", "timeout", "conection", "timeuot", "refused", "error", "tmeout",
+                    "c0nnection" };
+            StringBuilder text = new StringBuilder();
+            for(int i = 0; i < 3000; i++) {
+                for(int j = random.nextInt(6); j >= 0; j--) {
+                    text.append(words[random.nextInt(words.length)]).append(j > 0 ? " " : "");
+                }
+                text.append("\n");
+            }
+            File f = Files.createTempFile("approximate", ".txt").toFile();
+            Files.write(f.toPath(), text.toString().getBytes());
+            String[] lines = text.toString().split("\n");
+
+            for(String pattern : Arrays.asList("connection timeout", "timeout", "eror")) {
+                for(Integer maxEdits : Arrays.asList(0, 1, 2)) {
+                    List<Long> expected = new ArrayList<>();
+                    long offset = 0;
+                    for(String line : lines) {
+                        if(distance(pattern, line) <= maxEdits) {
+                            expected.add(offset);
+                        }
+                        offset += line.length() + 1;
+                    }
+                    for(Integer threads : Arrays.asList(1, 7)) {
+                        List<Long> offsets = ConcurrentFileTextSearch.searchApproximate(f, pattern, maxEdits, threads)
+                                .stream().map(SearchMatch::getOffset).sorted().collect(Collectors.toList());
+                        assertEquals(pattern + " " + maxEdits, expected, offsets);
+                    }
+                }
+            }
+            assertTrue(new ApproximateMatcher("connection timeout", 2).hasPrefilter());
+            assertFalse(new ApproximateMatcher("eror", 1).hasPrefilter());
+            assertEquals(1, new ApproximateMatcher("timeout", 3).distance(
+                    ByteBuffer.wrap("a tmeout".getBytes()), 0, 8));
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testChannelSearch() {
+        try {
+            StringBuilder text = new StringBuilder();
+            for(int i = 0; text.length() < Configuration.READ_BUFFER_SIZE * (Configuration.READ_BUFFER_POOL_SIZE + 3);
+                i++) {
+                text.append(i % 5000 == 0 ? "line " + i + " hi\n" : "line " + i + "\n");
+            }
+            for(int i = 0; i < Configuration.READ_BUFFER_SIZE * 2 + 100; i++) {
+                text.append(i == 10 ? 'h' : i == 11 ? 'i' : 'x');
+            }
+            text.append("\nhi at the end");
+            byte[] data = text.toString().getBytes();
+            File f = Files.createTempFile("channel", ".txt").toFile();
+            Files.write(f.toPath(), data);
+            List<SearchMatch> expected = new ArrayList<>();
+            ConcurrentFileTextSearch.search(f, new BoyerMooreHorspoolMatcher("hi"), 4, ReadBackend.FILE_CHANNEL,
+                    expected::add, null);
+            expected.sort((a, b) -> a.getOffset().compareTo(b.getOffset()));
+
+            List<SearchMatch> matches = ChannelTextSearch.search(new ByteArrayInputStream(data), "hi");
+            assertEquals(expected.size(), matches.size());
+            for(int i = 0; i < matches.size(); i++) {
+                assertEquals(expected.get(i).getOffset(), matches.get(i).getOffset());
+                assertEquals(expected.get(i).getLine(), matches.get(i).getLine());
+            }
+
+            /*
+             * A channel returning a few bytes per read, like a slow pipe
+             */
+            ByteBuffer source = ByteBuffer.wrap(data, 0, 100000);
+            ReadableByteChannel slow = new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) {
+                    if(!source.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(Math.min(7, dst.remaining()), source.remaining());
+                    for(int i = 0; i < n; i++) {
+                        dst.put(source.get());
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            List<SearchMatch> slowMatches = new ArrayList<>();
+            SearchStatistics statistics = ChannelTextSearch.search(slow, new BoyerMooreHorspoolMatcher("hi"),
+                    slowMatches::add, null);
+            assertEquals(100000L, statistics.getBytes().longValue());
+            assertEquals(expected.stream().filter(m -> m.getOffset() < 100000L - 20).count(), slowMatches.size());
+
+            List<SearchMatch> limited = new ArrayList<>();
+            statistics = ChannelTextSearch.search(Channels.newChannel(new ByteArrayInputStream(data)),
+                    new BoyerMooreHorspoolMatcher("hi"), limited::add, 3L);
+            assertEquals(3, limited.size());
+            assertTrue(statistics.isLimitReached());
+
+            /*
+             * A partial line left by a grown buffer, longer than the ring buffers
+             */
+            byte[] longLines = longLines();
+            matches = ChannelTextSearch.search(new ByteArrayInputStream(longLines), "hi");
+            assertEquals(3, matches.size());
+            assertEquals(longLines.length - 6, matches.get(2).getOffset().longValue());
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    /**
+     * A line of 2.5 times the read buffer size followed by a line of 1.8 times, with matches around them.
+     */
+    private static byte[] longLines() {
+        StringBuilder text = new StringBuilder("a hi\n");
+        for(int i = 0; i < Configuration.READ_BUFFER_SIZE * 5 / 2; i++) {
+            text.append('x');
+        }
+        text.append('\n');
+        for(int i = 0; i < Configuration.READ_BUFFER_SIZE * 9 / 5; i++) {
+            text.append('y');
+        }
+        text.append("hi\nhi end");
+        return text.toString().getBytes();
+    }
+
+    /**
+     * Lowest edit distance between the pattern and a substring of the line.
+     */
+    private static int distance(String pattern, String line) {
+        int[] previous = new int[line.length() + 1];
+        int[] current = new int[line.length() + 1];
+        for(int i = 1; i <= pattern.length(); i++) {
+            current[0] = i;
+            for(int j = 1; j <= line.length(); j++) {
+                int replace = previous[j - 1] + (pattern.charAt(i - 1) == line.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = pattern.length();
+        for(int d : previous) {
+            best = Math.min(best, d);
+        }
+        return best;
+    }
+
+    private static byte[] gzip(byte[] data, int from, int to) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try(GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data, from, to - from);
+        }
+        return compressed.toByteArray();
+    }
 }
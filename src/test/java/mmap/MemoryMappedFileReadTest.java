@@ -17,12 +17,24 @@
 package mmap;
 
 import conf.Configuration;
+import file.BoyerMooreHorspoolMatcher;
+import file.LineScanner;
+import io.ByteScanner;
+import io.MappingCache;
 import io.MemoryMappedFileRead;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Memory map read tests.
@@ -38,12 +50,158 @@ public class MemoryMappedFileReadTest extends TestCase {
 
     @Test
     public void testMmapRead() {
-        Integer offset = memoryMappedFileRead.seekEOL(184);
+        Long offset = memoryMappedFileRead.seekEOL(184L);
         try {
-            Map.Entry<Integer, String> line = memoryMappedFileRead.readLine(offset);
+            Map.Entry<Long, String> line = memoryMappedFileRead.readLine(offset);
             assertEquals("iiiiiiiiiiiiiiiiiii", line.getValue());
         } catch (IOException e) {
             assertTrue(false);
         }
     }
+
+    @Test
+    public void testSegmentedMmapRead() {
+        try {
+            /*
+             * Tiny segments, with an overlap shorter than most lines
+             */
+            MemoryMappedFileRead segmentedRead = new MemoryMappedFileRead(Configuration.getResource("mmapfile.txt"),
+                    64L, 8);
+            assertEquals(memoryMappedFileRead.getOffsetLimit(), segmentedRead.getOffsetLimit());
+            assertEquals(Integer.valueOf(11), segmentedRead.getSegmentCount());
+
+            Map.Entry<Long, String> line = segmentedRead.readLine(segmentedRead.seekEOL(184L));
+            assertEquals("iiiiiiiiiiiiiiiiiii", line.getValue());
+
+            List<String> lines = new ArrayList<>();
+            LineScanner.scan(segmentedRead, 0L, segmentedRead.getOffsetLimit(), new BoyerMooreHorspoolMatcher("hi"),
+                    (buffer, lineStart, lineEnd, offset) -> {
+                        lines.add(new String(LineScanner.copy(buffer, lineStart, lineEnd)));
+                        return true;
+                    });
+            assertEquals(5, lines.size());
+            assertEquals("cccccccccchiccccccc", lines.get(0));
+            assertEquals("hixxxxxxxxxxxxxxxxx", lines.get(4));
+
+            lines.clear();
+            LineScanner.scan(segmentedRead, 100L, 400L, new BoyerMooreHorspoolMatcher("hello"),
+                    (buffer, lineStart, lineEnd, offset) -> {
+                        lines.add(new String(LineScanner.copy(buffer, lineStart, lineEnd)));
+                        return offset >= 100L && offset < 400L;
+                    });
+            assertEquals(11, lines.size());
+            assertTrue(lines.stream().allMatch(l -> l.equals("hello")));
+
+            /*
+             * The lines before a line start, as the context lines, with the EOL as the last byte of a segment
+             */
+            for(Long p = 1L; p <= memoryMappedFileRead.getOffsetLimit(); p++) {
+                assertEquals(memoryMappedFileRead.seekBOL(p), segmentedRead.seekBOL(p));
+            }
+            File f = Files.createTempFile("segments", ".txt").toFile();
+            Files.write(f.toPath(), "line000\nline001\nline002\nline003\n".getBytes());
+            MemoryMappedFileRead lineRead = new MemoryMappedFileRead(f, 8L, 4);
+            List<Long> starts = new ArrayList<>();
+            for(Long p = lineRead.getOffsetLimit(); p > 0; p = lineRead.seekBOL(p)) {
+                starts.add(lineRead.seekBOL(p));
+            }
+            assertEquals(Arrays.asList(24L, 16L, 8L, 0L), starts);
+            lineRead.unmap();
+            f.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testByteScanner() {
+        byte[] data = new byte[300];
+        Random random = new Random(11);
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) (random.nextInt(40) == 0 ? 10 : 'a' + random.nextInt(3));
+        }
+        data[299] = (byte) 0x8a;
+        for(ByteOrder order : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(order);
+            for(byte b : new byte[] { 10, 'a', (byte) 0x8a, 'z' }) {
+                for(int from = 0; from < 20; from++) {
+                    for(int to = data.length - 20; to <= data.length; to++) {
+                        int first = -1, last = -1;
+                        for(int i = from; i < to; i++) {
+                            if(data[i] == b) {
+                                last = i;
+                                first = first < 0 ? i : first;
+                            }
+                        }
+                        assertEquals(first, ByteScanner.indexOf(buffer, b, from, to));
+                        assertEquals(last, ByteScanner.lastIndexOf(buffer, b, from, to));
+                    }
+                }
+            }
+        }
+        assertEquals(2, new BoyerMooreHorspoolMatcher("ab").indexOf(ByteBuffer.wrap("aaabab".getBytes()), 0, 6));
+        assertEquals(-1, new BoyerMooreHorspoolMatcher("ab").indexOf(ByteBuffer.wrap("aaabab".getBytes()), 0, 3));
+    }
+
+    @Test
+    public void testMappingCache() {
+        try {
+            File directory = Files.createTempDirectory("mmap").toFile();
+            File a = new File(directory, "a.txt");
+            File b = new File(directory, "b.txt");
+            Files.write(a.toPath(), "hello\nhi\n".getBytes());
+            Files.write(b.toPath(), "hi\n".getBytes());
+            MappingCache cache = new MappingCache(1, 1048576L);
+
+            /*
+             * A repeated use of the same file skips the mapping
+             */
+            MemoryMappedFileRead first;
+            try(MappingCache.Lease lease = cache.acquire(a)) {
+                first = lease.getMemoryMappedFileRead();
+            }
+            try(MappingCache.Lease lease = cache.acquire(a)) {
+                assertSame(first, lease.getMemoryMappedFileRead());
+                assertTrue(first.isMapped());
+            }
+            assertEquals(1L, cache.getHits().longValue());
+            assertEquals(1L, cache.getMisses().longValue());
+
+            /*
+             * A mapping in use is evicted but only unmapped on its release
+             */
+            MappingCache.Lease lease = cache.acquire(a);
+            try(MappingCache.Lease other = cache.acquire(b)) {
+                assertEquals("hi", other.getMemoryMappedFileRead().readLine(0L).getValue());
+                assertEquals(1, cache.size().intValue());
+                assertTrue(first.isMapped());
+                assertEquals("hello", lease.getMemoryMappedFileRead().readLine(0L).getValue());
+            }
+            lease.close();
+            assertFalse(first.isMapped());
+
+            /*
+             * A modified file is mapped again
+             */
+            try(MappingCache.Lease other = cache.acquire(b)) {
+                first = other.getMemoryMappedFileRead();
+            }
+            Files.write(b.toPath(), "hello\n".getBytes());
+            b.setLastModified(b.lastModified() + 2000L);
+            try(MappingCache.Lease other = cache.acquire(b)) {
+                assertNotSame(first, other.getMemoryMappedFileRead());
+                assertFalse(first.isMapped());
+                assertEquals(6L, other.getMemoryMappedFileRead().getOffsetLimit().longValue());
+            }
+            cache.clear();
+            assertEquals(0, cache.size().intValue());
+            assertEquals(0L, cache.getMappedBytes().longValue());
+
+            a.delete();
+            b.delete();
+            directory.delete();
+        } catch (IOException e) {
+            assertTrue(false);
+        }
+    }
 }